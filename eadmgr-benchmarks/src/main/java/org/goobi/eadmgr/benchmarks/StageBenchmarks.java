@@ -0,0 +1,178 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr.benchmarks;
+
+import org.goobi.eadmgr.ArchiveModel;
+import org.goobi.eadmgr.EADDocument;
+import org.goobi.eadmgr.EADGenerator;
+import org.goobi.eadmgr.Extractor;
+import org.goobi.eadmgr.SchlegelExtractor;
+import org.goobi.eadmgr.TemplatesCache;
+import org.goobi.eadmgr.XMLSerializer;
+import org.goobi.eadmgr.XsltExtractor;
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Templates;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the processing stages of process creation on an EAD file of <code>folders</code> folders with
+ * <code>letters</code> letters each, written by {@link EADGenerator}.
+ * <p/>
+ * Since extraction streams the selected folders straight out of the transformation, filtering and serializing a
+ * folder is measured together with the transformation in {@link #extractFolder()}. {@link #transform()} and
+ * {@link #serialize()} measure the transformation into a DOM and the serialization of that DOM on their own.
+ * <p/>
+ * The <code>Native</code> variants extract with {@link SchlegelExtractor} instead of the profile. The setup checks
+ * that both produce identical folders before anything is measured.
+ * <p/>
+ * Run with <code>java -jar target/benchmarks.jar -p folders=1000 -p letters=20</code> to change the size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class StageBenchmarks {
+
+	public static final String EXTRACTION_PROFILE = "schlegel.xsl";
+	public static final long SEED = 1;
+
+	@Param({"100", "1000"})
+	public int folders;
+
+	@Param({"10"})
+	public int letters;
+
+	private File eadFile;
+	private EADDocument ead;
+	private Document eadDom;
+	private Templates profile;
+	private Document extracted;
+	private Extractor xsltExtractor;
+	private Extractor nativeExtractor;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		eadFile = File.createTempFile("eadmgr-benchmark-", ".xml");
+		OutputStream out = new FileOutputStream(eadFile);
+		try {
+			EADGenerator.write(out, folders, letters, SEED);
+		} finally {
+			out.close();
+		}
+
+		ead = new EADDocument();
+		ead.readEadFile(eadFile, false);
+		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		dbf.setNamespaceAware(true);
+		eadDom = dbf.newDocumentBuilder().parse(eadFile);
+		profile = TemplatesCache.getInstance().get(EXTRACTION_PROFILE);
+		extracted = transform();
+		xsltExtractor = XsltExtractor.forProfile(EXTRACTION_PROFILE);
+		nativeExtractor = new SchlegelExtractor();
+		checkConformance();
+	}
+
+	/**
+	 * Fail the trial if the native extractor does not reproduce the output of the extraction profile exactly.
+	 */
+	private void checkConformance() throws Exception {
+		Map<String, byte[]> expected = ead.extractFolderData((Collection<String>) null, xsltExtractor, true);
+		Map<String, byte[]> actual = ead.extractFolderData((Collection<String>) null, nativeExtractor, true);
+		if (!expected.keySet().equals(actual.keySet())) {
+			throw new IllegalStateException("Native extractor yields folders " + actual.keySet()
+					+ " instead of " + expected.keySet());
+		}
+		for (Map.Entry<String, byte[]> folder : expected.entrySet()) {
+			if (!Arrays.equals(folder.getValue(), actual.get(folder.getKey()))) {
+				throw new IllegalStateException("Native extractor output differs for folder " + folder.getKey());
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		eadFile.delete();
+	}
+
+	@Benchmark
+	public EADDocument parse() throws Exception {
+		EADDocument doc = new EADDocument();
+		doc.readEadFile(eadFile, false);
+		return doc;
+	}
+
+	@Benchmark
+	public ArchiveModel readModel() throws Exception {
+		return ArchiveModel.read(eadFile, false);
+	}
+
+	@Benchmark
+	public List<String> getFolderIds() throws Exception {
+		return ead.getFolderIds();
+	}
+
+	@Benchmark
+	public Document transform() throws Exception {
+		DOMResult result = new DOMResult();
+		profile.newTransformer().transform(new DOMSource(eadDom), result);
+		return (Document) result.getNode();
+	}
+
+	@Benchmark
+	public String serialize() throws Exception {
+		return XMLSerializer.serialize(extracted);
+	}
+
+	@Benchmark
+	public byte[] extractFolder() throws Exception {
+		return ead.extractFolderData(EADGenerator.folderId(0), EXTRACTION_PROFILE, true);
+	}
+
+	@Benchmark
+	public Map<String, byte[]> extractAllFolders() throws Exception {
+		return ead.extractFolderData((Collection<String>) null, EXTRACTION_PROFILE, true);
+	}
+
+	@Benchmark
+	public byte[] extractFolderNative() throws Exception {
+		return ead.extractFolderData(EADGenerator.folderId(0), nativeExtractor, true);
+	}
+
+	@Benchmark
+	public Map<String, byte[]> extractAllFoldersNative() throws Exception {
+		return ead.extractFolderData((Collection<String>) null, nativeExtractor, true);
+	}
+}
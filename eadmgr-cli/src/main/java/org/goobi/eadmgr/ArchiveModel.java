@@ -0,0 +1,454 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact, immutable in-memory model of an EAD archive as an alternative to the W3C DOM.
+ * <p/>
+ * The model holds only the fields the built-in extraction profile <code>schlegel.xsl</code> reads: the archive
+ * header, the folders on level <code>class</code> and their letters on level <code>item</code>. It is built in a
+ * single streaming pass (see {@link #read(File, boolean)}). Whitespace and unused elements are dropped, children are
+ * kept in arrays and equal strings of an archive, such as names and GND IDs, share a single instance.
+ * <p/>
+ * Folder data extracted from the model is identical to the output of <code>schlegel.xsl</code>.
+ */
+public class ArchiveModel implements FolderReader {
+
+	private static final AttributesImpl NO_ATTRIBUTES = new AttributesImpl();
+	private static Logger logger = LoggerFactory.getLogger(ArchiveModel.class);
+	private final String id;
+	private final String title;
+	private final String ownerId;
+	private final String ownerName;
+	private final Folder[] folders;
+
+	ArchiveModel(String id, String title, String ownerId, String ownerName, Folder[] folders) {
+		this.id = id;
+		this.title = title;
+		this.ownerId = ownerId;
+		this.ownerName = ownerName;
+		this.folders = folders;
+	}
+
+	/**
+	 * Read the model of an EAD file.
+	 *
+	 * @param eadFile               EAD file.
+	 * @param validateAgainstSchema Whether to validate the file while reading.
+	 * @return Model of the archive.
+	 */
+	public static ArchiveModel read(File eadFile, boolean validateAgainstSchema) throws Exception {
+		return new ArchiveModelBuilder().build(eadFile, validateAgainstSchema);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getOwnerId() {
+		return ownerId;
+	}
+
+	public String getOwnerName() {
+		return ownerName;
+	}
+
+	public List<Folder> getFolders() {
+		return Collections.unmodifiableList(Arrays.asList(folders));
+	}
+
+	@Override
+	public List<String> getFolderIds() {
+		UniqueFolderIds result = new UniqueFolderIds();
+		for (Folder folder : folders) {
+			result.add(folder.getId());
+		}
+		return result.getIds();
+	}
+
+	/**
+	 * Extract data for a single folder.
+	 *
+	 * @param folderId ID of the folder to extract.
+	 * @param indent   Whether to indent the extracted XML.
+	 * @return Extracted folder document serialized as UTF-8.
+	 */
+	public byte[] extractFolderData(String folderId, boolean indent) throws Exception {
+		return extractFolderData(Collections.singletonList(folderId), indent).get(folderId);
+	}
+
+	/**
+	 * Extract data for several folders.
+	 *
+	 * @param folderIds IDs of the folders to extract or <code>null</code> for all folders.
+	 * @param indent    Whether to indent the extracted XML.
+	 * @return Extracted folder documents serialized as UTF-8 and mapped by folder ID, in the order of the given IDs
+	 *         or, if no IDs are given, in document order.
+	 */
+	public Map<String, byte[]> extractFolderData(Collection<String> folderIds, boolean indent) throws Exception {
+		FolderSplitter splitter = new FolderSplitter(folderIds, indent);
+		extract(folderIds, splitter);
+		return splitter.getFolders(folderIds);
+	}
+
+	/**
+	 * Extract data for several folders and pass each folder on as soon as it has been extracted. The model yields
+	 * the folder data of <code>schlegel.xsl</code> by itself, so the given extractor is not used.
+	 */
+	@Override
+	public void extract(Collection<String> folderIds, Extractor extractor, boolean indent, FolderHandler handler)
+			throws Exception {
+		extract(folderIds, new FolderSplitter(folderIds, indent, handler));
+	}
+
+	private void extract(Collection<String> folderIds, FolderSplitter splitter) throws Exception {
+		logger.info("Extract data for {} folders from archive model", (folderIds == null) ? "all" : folderIds.size());
+		Metrics.Timer timer = Metrics.getInstance().start(Metrics.TRANSFORM);
+		try {
+			writeBundle(splitter, (folderIds == null) ? null : new HashSet<String>(folderIds));
+		} finally {
+			timer.stop();
+		}
+		Metrics.getInstance().count(Metrics.FOLDERS, splitter.getFolderCount());
+	}
+
+	@Override
+	public void close() {
+		// nothing to release, the model may still be cached
+	}
+
+	/**
+	 * Send the <code>bundle</code> document that <code>schlegel.xsl</code> produces for this archive.
+	 *
+	 * @param handler   Receives the document.
+	 * @param folderIds IDs of the folders to include or <code>null</code> for all folders.
+	 */
+	void writeBundle(ContentHandler handler, Set<String> folderIds) throws SAXException {
+		handler.startDocument();
+		start(handler, "bundle");
+		element(handler, "id", id);
+		element(handler, "title", title);
+		start(handler, "owner");
+		element(handler, "id", ownerId);
+		element(handler, "name", ownerName);
+		end(handler, "owner");
+		start(handler, "folders");
+		for (Folder folder : folders) {
+			if ((folderIds == null) || folderIds.contains(folder.getId())) {
+				folder.write(handler);
+			}
+		}
+		end(handler, "folders");
+		end(handler, "bundle");
+		handler.endDocument();
+	}
+
+	/**
+	 * Estimate the heap size retained by the model. Strings shared by several fields are counted once.
+	 *
+	 * @return Estimated size in bytes.
+	 */
+	public long estimateSize() {
+		// object header and fields, arrays and strings on a 64 bit JVM with compressed references
+		Map<String, Boolean> strings = new IdentityHashMap<String, Boolean>();
+		long size = 32 + 16 + 4L * folders.length;
+		strings.put(id, Boolean.TRUE);
+		strings.put(title, Boolean.TRUE);
+		strings.put(ownerId, Boolean.TRUE);
+		strings.put(ownerName, Boolean.TRUE);
+		for (Folder folder : folders) {
+			size += 40 + 16 + 4L * folder.letters.length;
+			strings.put(folder.id, Boolean.TRUE);
+			strings.put(folder.title, Boolean.TRUE);
+			strings.put(folder.signature, Boolean.TRUE);
+			strings.put(folder.folderNumber, Boolean.TRUE);
+			for (Letter letter : folder.letters) {
+				size += 64 + 16 + 4L * letter.agents.length;
+				for (String field : letter.fields()) {
+					strings.put(field, Boolean.TRUE);
+				}
+				for (Agent agent : letter.agents) {
+					size += 24;
+					strings.put(agent.gndId, Boolean.TRUE);
+					strings.put(agent.name, Boolean.TRUE);
+				}
+			}
+		}
+		for (String s : strings.keySet()) {
+			if (s != null) {
+				size += 40 + 2L * s.length();
+			}
+		}
+		return size;
+	}
+
+	private static void start(ContentHandler handler, String name) throws SAXException {
+		handler.startElement("", name, name, NO_ATTRIBUTES);
+	}
+
+	private static void end(ContentHandler handler, String name) throws SAXException {
+		handler.endElement("", name, name);
+	}
+
+	private static void element(ContentHandler handler, String name, String value) throws SAXException {
+		start(handler, name);
+		if ((value != null) && !value.isEmpty()) {
+			handler.characters(value.toCharArray(), 0, value.length());
+		}
+		end(handler, name);
+	}
+
+	/**
+	 * Folder on level <code>class</code>.
+	 */
+	public static class Folder {
+		private final String id;
+		private final String title;
+		private final String signature;
+		private final String folderNumber;
+		private final Letter[] letters;
+
+		Folder(String id, String title, String signature, String folderNumber, Letter[] letters) {
+			this.id = id;
+			this.title = title;
+			this.signature = signature;
+			this.folderNumber = folderNumber;
+			this.letters = letters;
+		}
+
+		/**
+		 * @return Folder ID or <code>null</code> if the folder has none.
+		 */
+		public String getId() {
+			return id;
+		}
+
+		public String getTitle() {
+			return title;
+		}
+
+		public String getSignature() {
+			return signature;
+		}
+
+		/**
+		 * @return Folder container of the first letter.
+		 */
+		public String getFolderNumber() {
+			return folderNumber;
+		}
+
+		public List<Letter> getLetters() {
+			return Collections.unmodifiableList(Arrays.asList(letters));
+		}
+
+		private void write(ContentHandler handler) throws SAXException {
+			start(handler, "folder");
+			element(handler, "id", id);
+			element(handler, "title", title);
+			element(handler, "signature", signature);
+			element(handler, "folder", folderNumber);
+			start(handler, "elements");
+			for (Letter letter : letters) {
+				letter.write(handler);
+			}
+			end(handler, "elements");
+			end(handler, "folder");
+		}
+	}
+
+	/**
+	 * Letter on level <code>item</code>.
+	 */
+	public static class Letter {
+		private final String id;
+		private final String title;
+		private final String signature;
+		private final String furtherSignature;
+		private final String folio;
+		private final String date;
+		private final String origin;
+		private final String extent;
+		private final String dimensions;
+		private final String addendum;
+		private final String language;
+		private final Agent[] agents;
+
+		Letter(String id, String title, String signature, String furtherSignature, String folio, String date,
+				String origin, String extent, String dimensions, String addendum, String language, Agent[] agents) {
+			this.id = id;
+			this.title = title;
+			this.signature = signature;
+			this.furtherSignature = furtherSignature;
+			this.folio = folio;
+			this.date = date;
+			this.origin = origin;
+			this.extent = extent;
+			this.dimensions = dimensions;
+			this.addendum = addendum;
+			this.language = language;
+			this.agents = agents;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getTitle() {
+			return title;
+		}
+
+		public String getSignature() {
+			return signature;
+		}
+
+		public String getFurtherSignature() {
+			return furtherSignature;
+		}
+
+		public String getFolio() {
+			return folio;
+		}
+
+		/**
+		 * @return Normalized date if given, otherwise the date as written.
+		 */
+		public String getDate() {
+			return date;
+		}
+
+		public String getOrigin() {
+			return origin;
+		}
+
+		public String getExtent() {
+			return extent;
+		}
+
+		public String getDimensions() {
+			return dimensions;
+		}
+
+		public String getAddendum() {
+			return addendum;
+		}
+
+		public String getLanguage() {
+			return language;
+		}
+
+		/**
+		 * @return Creators and addressees; persons first, then corporate bodies, each in document order.
+		 */
+		public List<Agent> getAgents() {
+			return Collections.unmodifiableList(Arrays.asList(agents));
+		}
+
+		private String[] fields() {
+			return new String[]{id, title, signature, furtherSignature, folio, date, origin, extent, dimensions,
+					addendum, language};
+		}
+
+		private void write(ContentHandler handler) throws SAXException {
+			start(handler, "letter");
+			element(handler, "id", id);
+			element(handler, "title", title);
+			element(handler, "signature", signature);
+			element(handler, "further-signature", furtherSignature);
+			element(handler, "folio", folio);
+			element(handler, "date", date);
+			element(handler, "origin", origin);
+			element(handler, "extent", extent);
+			element(handler, "dimensions", dimensions);
+			element(handler, "addendum", addendum);
+			element(handler, "language", language);
+			for (Agent agent : agents) {
+				agent.write(handler);
+			}
+			end(handler, "letter");
+		}
+	}
+
+	/**
+	 * Creator or addressee of a letter.
+	 */
+	public static class Agent {
+		private final Role role;
+		private final String gndId;
+		private final String name;
+
+		Agent(Role role, String gndId, String name) {
+			this.role = role;
+			this.gndId = gndId;
+			this.name = name;
+		}
+
+		public Role getRole() {
+			return role;
+		}
+
+		public String getGndId() {
+			return gndId;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		private void write(ContentHandler handler) throws SAXException {
+			String element = role.getName();
+			start(handler, element);
+			element(handler, "gnd-id", gndId);
+			element(handler, "name", name);
+			end(handler, element);
+		}
+	}
+
+	public enum Role {
+		Creator,
+		Addressee;
+
+		public String getName() {
+			return name().toLowerCase();
+		}
+	}
+}
@@ -0,0 +1,575 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.w3c.dom.NamedNodeMap;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXSource;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds an {@link ArchiveModel} from the SAX events of an EAD document.
+ * <p/>
+ * Each field is taken from the same node <code>schlegel.xsl</code> selects, so that the model yields the same
+ * extraction result: string values of the first matching element, <code>normalize-space</code> of the first direct
+ * text node where the profile uses <code>text()[1]</code>, and the first matching attribute in document order.
+ */
+class ArchiveModelBuilder extends DefaultHandler implements LexicalHandler {
+
+	private final Map<String, String> strings = new HashMap<String, String>();
+	private final LinkedList<Frame> frames = new LinkedList<Frame>();
+	private final List<Capture> captures = new ArrayList<Capture>();
+	private final String[] values = new String[Field.values().length];
+	private final List<ArchiveModel.Folder> folders = new ArrayList<ArchiveModel.Folder>();
+	private final List<ArchiveModel.Letter> letters = new ArrayList<ArchiveModel.Letter>();
+	private final List<ArchiveModel.Agent> persons = new ArrayList<ArchiveModel.Agent>();
+	private final List<ArchiveModel.Agent> corporations = new ArrayList<ArchiveModel.Agent>();
+	private final StringBuilder run = new StringBuilder();
+	private final Set<String> folderIds;
+	private boolean isArchdescSeen;
+
+	ArchiveModelBuilder() {
+		this(null);
+	}
+
+	/**
+	 * @param folderIds IDs of the folders to include in the model or <code>null</code> for all folders. Other folders
+	 *                  are skipped, when reading a DOM without even visiting their nodes.
+	 */
+	ArchiveModelBuilder(Set<String> folderIds) {
+		this.folderIds = folderIds;
+		frames.push(Frame.Other);
+	}
+
+	/**
+	 * Parse an EAD file into a model.
+	 *
+	 * @param eadFile               EAD file.
+	 * @param validateAgainstSchema Whether to validate the file while reading.
+	 */
+	ArchiveModel build(File eadFile, boolean validateAgainstSchema) throws Exception {
+		SAXParserFactory spf = SAXParserFactory.newInstance();
+		spf.setNamespaceAware(true);
+		if (validateAgainstSchema) {
+			spf.setSchema(EADSchema.getInstance());
+		}
+
+		Metrics.Timer timer = Metrics.getInstance().start(Metrics.PARSE);
+		try {
+			parse(spf.newSAXParser().getXMLReader(), new InputSource(eadFile.toURI().toString()));
+		} finally {
+			timer.stop();
+		}
+		return createModel();
+	}
+
+	/**
+	 * Build a model from a DOM, a stream or a SAX source. Streams are parsed without validation.
+	 *
+	 * @param source EAD document.
+	 */
+	ArchiveModel build(Source source) throws Exception {
+		if (source instanceof DOMSource) {
+			walk(((DOMSource) source).getNode());
+			return createModel();
+		}
+
+		InputSource input = SAXSource.sourceToInputSource(source);
+		if (input == null) {
+			throw new Exception("Unsupported source " + source.getClass().getName());
+		}
+		XMLReader reader = (source instanceof SAXSource) ? ((SAXSource) source).getXMLReader() : null;
+		if (reader == null) {
+			SAXParserFactory spf = SAXParserFactory.newInstance();
+			spf.setNamespaceAware(true);
+			reader = spf.newSAXParser().getXMLReader();
+		}
+
+		Metrics.Timer timer = Metrics.getInstance().start(Metrics.PARSE);
+		try {
+			parse(reader, input);
+		} finally {
+			timer.stop();
+		}
+		return createModel();
+	}
+
+	/**
+	 * Send the events of a DOM subtree without recursion. Cheaper than an identity transformation, as no namespace
+	 * context is maintained and only the attributes of EAD elements are copied.
+	 */
+	private void walk(org.w3c.dom.Node root) throws SAXException {
+		AttributesImpl atts = new AttributesImpl();
+		org.w3c.dom.Node node = root;
+		while (node != null) {
+			switch (node.getNodeType()) {
+				case org.w3c.dom.Node.ELEMENT_NODE:
+					atts.clear();
+					String uri = node.getNamespaceURI();
+					if (EADStreamReader.EAD_NAMESPACE.equals(uri)) {
+						NamedNodeMap attributes = node.getAttributes();
+						for (int i = 0; i < attributes.getLength(); i++) {
+							org.w3c.dom.Node a = attributes.item(i);
+							if (a.getNamespaceURI() == null) {
+								atts.addAttribute("", a.getLocalName(), a.getNodeName(), "CDATA", a.getNodeValue());
+							}
+						}
+					}
+					startElement(uri, node.getLocalName(), node.getNodeName(), atts);
+					if (frames.peek() == Frame.Skipped) {
+						endElement(uri, node.getLocalName(), node.getNodeName());
+						node = next(node, root);
+						continue;
+					}
+					break;
+				case org.w3c.dom.Node.TEXT_NODE:
+				case org.w3c.dom.Node.CDATA_SECTION_NODE:
+					String text = node.getNodeValue();
+					characters(text.toCharArray(), 0, text.length());
+					break;
+				case org.w3c.dom.Node.COMMENT_NODE:
+					comment(null, 0, 0);
+					break;
+				case org.w3c.dom.Node.PROCESSING_INSTRUCTION_NODE:
+					processingInstruction(null, null);
+					break;
+				default:
+					break;
+			}
+
+			if (node.getFirstChild() != null) {
+				node = node.getFirstChild();
+			} else {
+				if (node.getNodeType() == org.w3c.dom.Node.ELEMENT_NODE) {
+					endElement(node.getNamespaceURI(), node.getLocalName(), node.getNodeName());
+				}
+				node = next(node, root);
+			}
+		}
+	}
+
+	/**
+	 * @return Node following a completed subtree in document order, after ending all elements completed with it.
+	 */
+	private org.w3c.dom.Node next(org.w3c.dom.Node node, org.w3c.dom.Node root) throws SAXException {
+		while (node != root) {
+			if (node.getNextSibling() != null) {
+				return node.getNextSibling();
+			}
+			node = node.getParentNode();
+			if (node.getNodeType() == org.w3c.dom.Node.ELEMENT_NODE) {
+				endElement(node.getNamespaceURI(), node.getLocalName(), node.getNodeName());
+			}
+		}
+		return null;
+	}
+
+	private void parse(XMLReader reader, InputSource input) throws Exception {
+		reader.setContentHandler(this);
+		reader.setErrorHandler(new StrictErrorHandler());
+		// comments end text nodes, which matters for text()[1]
+		reader.setProperty("http://xml.org/sax/properties/lexical-handler", this);
+		reader.parse(input);
+	}
+
+	private ArchiveModel createModel() {
+		return new ArchiveModel(get(Field.ArchiveId), get(Field.ArchiveTitle), get(Field.OwnerId),
+				get(Field.OwnerName), folders.toArray(new ArchiveModel.Folder[folders.size()]));
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+		Frame parent = frames.peek();
+		if (parent == Frame.Skipped) {
+			frames.push(Frame.Skipped);
+			return;
+		}
+		endRun();
+		Frame frame = Frame.Other;
+
+		if (EADStreamReader.EAD_NAMESPACE.equals(uri)) {
+			if ("archdesc".equals(localName) && !isArchdescSeen) {
+				isArchdescSeen = true;
+				frame = Frame.Archdesc;
+				set(Field.ArchiveId, attribute(atts, "id"));
+			} else if (parent == Frame.Archdesc) {
+				if ("did".equals(localName)) {
+					frame = Frame.ArchdescDid;
+				} else if ("dsc".equals(localName)) {
+					frame = Frame.Dsc;
+				}
+			} else if (parent == Frame.ArchdescDid) {
+				if ("unittitle".equals(localName)) {
+					capture(Field.ArchiveTitle);
+				} else if ("repository".equals(localName)) {
+					frame = Frame.Repository;
+				}
+			} else if (parent == Frame.Repository && "corpname".equals(localName)) {
+				setFirst(Field.OwnerId, atts.getValue("", "authfilenumber"));
+				setFirst(Field.OwnerName, atts.getValue("", "normal"));
+			} else if (parent == Frame.Dsc && "c".equals(localName) && "class".equals(atts.getValue("", "level"))) {
+				String id = atts.getValue("", "id");
+				if ((folderIds == null) || folderIds.contains((id == null) ? "" : id)) {
+					frame = Frame.Folder;
+					clear(Field.FolderId, Field.FolderNumber);
+					letters.clear();
+					set(Field.FolderId, id);
+				} else {
+					frame = Frame.Skipped;
+				}
+			} else if (parent == Frame.Folder) {
+				if ("did".equals(localName)) {
+					frame = Frame.FolderDid;
+				} else if ("c".equals(localName) && "item".equals(atts.getValue("", "level"))) {
+					frame = Frame.Letter;
+					clear(Field.LetterId, Field.Language);
+					persons.clear();
+					corporations.clear();
+					set(Field.LetterId, attribute(atts, "id"));
+				}
+			} else if (parent == Frame.FolderDid) {
+				if ("unittitle".equals(localName)) {
+					capture(Field.FolderTitle);
+				} else if ("unitid".equals(localName)) {
+					capture(Field.FolderSignature);
+				}
+			} else if (parent == Frame.Letter) {
+				if ("did".equals(localName)) {
+					frame = Frame.LetterDid;
+				} else if ("odd".equals(localName) && "accompanyingMaterial".equals(atts.getValue("", "type"))) {
+					capture(Field.Addendum);
+				}
+			} else if (parent == Frame.LetterDid) {
+				String type = atts.getValue("", "type");
+				if ("unittitle".equals(localName)) {
+					frame = Frame.LetterTitle;
+				} else if ("unitid".equals(localName) && "shelfMark".equals(type)) {
+					frame = Frame.ShelfMark;
+				} else if ("unitid".equals(localName) && "furtherShelfMark".equals(type)) {
+					frame = Frame.FurtherShelfMark;
+				} else if ("container".equals(localName) && "folio".equals(type)) {
+					capture(Field.Folio);
+				} else if ("container".equals(localName) && "folder".equals(type) && letters.isEmpty()) {
+					// the folder number is taken from the first letter only
+					capture(Field.FolderNumber);
+				} else if ("physdesc".equals(localName)) {
+					frame = Frame.Physdesc;
+				} else if ("langmaterial".equals(localName)) {
+					frame = Frame.Langmaterial;
+				}
+			} else if (parent == Frame.LetterTitle) {
+				String role = atts.getValue("", "role");
+				if ("unitdate".equals(localName)) {
+					setFirst(Field.DateNormal, atts.getValue("", "normal"));
+					capture(Field.DateText);
+				} else if ("geogname".equals(localName) && (role != null)) {
+					capture(Field.Origin);
+				} else if ("persname".equals(localName) && "creator".equals(role)) {
+					persons.add(agent(ArchiveModel.Role.Creator, atts));
+				} else if ("persname".equals(localName) && "addressee".equals(role)) {
+					persons.add(agent(ArchiveModel.Role.Addressee, atts));
+				} else if ("corpname".equals(localName) && "creator".equals(role)) {
+					corporations.add(agent(ArchiveModel.Role.Creator, atts));
+				}
+			} else if (parent == Frame.Physdesc) {
+				if ("extent".equals(localName)) {
+					capture(Field.Extent);
+				} else if ("dimensions".equals(localName)) {
+					capture(Field.Dimensions);
+				}
+			} else if (parent == Frame.Langmaterial && "language".equals(localName)) {
+				setFirst(Field.Language, atts.getValue("", "langcode"));
+			}
+		}
+
+		frames.push(frame);
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		if (frames.peek() == Frame.Skipped) {
+			frames.pop();
+			return;
+		}
+		endRun();
+		int depth = frames.size();
+		for (int i = captures.size() - 1; i >= 0; i--) {
+			Capture capture = captures.get(i);
+			if (capture.depth == depth) {
+				setFirst(capture.field, capture.text.toString());
+				captures.remove(i);
+			}
+		}
+
+		Frame frame = frames.pop();
+		if (frame == Frame.Letter) {
+			endLetter();
+		} else if (frame == Frame.Folder) {
+			endFolder();
+		}
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (frames.peek() == Frame.Skipped) {
+			return;
+		}
+		for (Capture capture : captures) {
+			capture.text.append(ch, start, length);
+		}
+		Field field = frames.peek().getRunField();
+		if ((field != null) && (values[field.ordinal()] == null)) {
+			run.append(ch, start, length);
+		}
+	}
+
+	@Override
+	public void processingInstruction(String target, String data) throws SAXException {
+		endRun();
+	}
+
+	@Override
+	public void comment(char[] ch, int start, int length) throws SAXException {
+		endRun();
+	}
+
+	@Override
+	public void startDTD(String name, String publicId, String systemId) throws SAXException {
+	}
+
+	@Override
+	public void endDTD() throws SAXException {
+	}
+
+	@Override
+	public void startEntity(String name) throws SAXException {
+	}
+
+	@Override
+	public void endEntity(String name) throws SAXException {
+	}
+
+	@Override
+	public void startCDATA() throws SAXException {
+	}
+
+	@Override
+	public void endCDATA() throws SAXException {
+	}
+
+	private void endLetter() {
+		List<ArchiveModel.Agent> agents = new ArrayList<ArchiveModel.Agent>(persons);
+		agents.addAll(corporations);
+		String date = (get(Field.DateNormal) != null) ? get(Field.DateNormal) : get(Field.DateText);
+		letters.add(new ArchiveModel.Letter(get(Field.LetterId), normalized(Field.LetterTitle),
+				normalized(Field.LetterSignature), normalized(Field.LetterFurtherSignature), get(Field.Folio),
+				date, get(Field.Origin), get(Field.Extent), get(Field.Dimensions), normalized(Field.Addendum),
+				get(Field.Language), agents.toArray(new ArchiveModel.Agent[agents.size()])));
+	}
+
+	private void endFolder() {
+		folders.add(new ArchiveModel.Folder(get(Field.FolderId), get(Field.FolderTitle), get(Field.FolderSignature),
+				get(Field.FolderNumber), letters.toArray(new ArchiveModel.Letter[letters.size()])));
+	}
+
+	/**
+	 * End the current text node. The first text node of an element selected with <code>text()[1]</code> is kept.
+	 */
+	private void endRun() {
+		if (run.length() > 0) {
+			setFirst(frames.peek().getRunField(), run.toString());
+			run.setLength(0);
+		}
+	}
+
+	private void capture(Field field) {
+		if (values[field.ordinal()] == null) {
+			// the element is pushed after this call, so it ends at the next depth
+			captures.add(new Capture(field, frames.size() + 1));
+		}
+	}
+
+	private ArchiveModel.Agent agent(ArchiveModel.Role role, Attributes atts) {
+		return new ArchiveModel.Agent(role, intern(attribute(atts, "authfilenumber")), intern(attribute(atts, "normal")));
+	}
+
+	private static String attribute(Attributes atts, String name) {
+		String value = atts.getValue("", name);
+		return (value == null) ? "" : value;
+	}
+
+	private void set(Field field, String value) {
+		values[field.ordinal()] = value;
+	}
+
+	private void setFirst(Field field, String value) {
+		if (values[field.ordinal()] == null) {
+			values[field.ordinal()] = value;
+		}
+	}
+
+	private void clear(Field from, Field to) {
+		for (int i = from.ordinal(); i <= to.ordinal(); i++) {
+			values[i] = null;
+		}
+	}
+
+	/**
+	 * @return Interned value of a field, or the empty string if not set. A missing folder ID stays
+	 *         <code>null</code>.
+	 */
+	private String get(Field field) {
+		String value = values[field.ordinal()];
+		if ((value == null) && (field != Field.FolderId) && (field != Field.DateNormal)) {
+			value = "";
+		}
+		return intern(value);
+	}
+
+	private String normalized(Field field) {
+		return intern(normalizeSpace(get(field)));
+	}
+
+	private String intern(String s) {
+		if (s == null) {
+			return null;
+		}
+		String interned = strings.get(s);
+		if (interned == null) {
+			// don't keep a reference to a larger char array of a substring
+			interned = new String(s);
+			strings.put(interned, interned);
+		}
+		return interned;
+	}
+
+	/**
+	 * XPath <code>normalize-space()</code>: strip leading and trailing white space and replace sequences of white
+	 * space characters by a single space.
+	 */
+	static String normalizeSpace(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		boolean isSpace = false;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if ((c == ' ') || (c == '\t') || (c == '\r') || (c == '\n')) {
+				isSpace = true;
+			} else {
+				if (isSpace && (sb.length() > 0)) {
+					sb.append(' ');
+				}
+				isSpace = false;
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Elements on the path to the extracted fields. Text of elements with a run field is collected for
+	 * <code>text()[1]</code>.
+	 */
+	private enum Frame {
+		Other(null),
+		Skipped(null),
+		Archdesc(null),
+		ArchdescDid(null),
+		Repository(null),
+		Dsc(null),
+		Folder(null),
+		FolderDid(null),
+		Letter(null),
+		LetterDid(null),
+		LetterTitle(Field.LetterTitle),
+		ShelfMark(Field.LetterSignature),
+		FurtherShelfMark(Field.LetterFurtherSignature),
+		Physdesc(null),
+		Langmaterial(null);
+
+		private final Field runField;
+
+		Frame(Field runField) {
+			this.runField = runField;
+		}
+
+		Field getRunField() {
+			return runField;
+		}
+	}
+
+	/**
+	 * Extracted fields. Folder and letter fields are each declared in one block so that they can be cleared
+	 * together.
+	 */
+	private enum Field {
+		ArchiveId,
+		ArchiveTitle,
+		OwnerId,
+		OwnerName,
+		FolderId,
+		FolderTitle,
+		FolderSignature,
+		FolderNumber,
+		LetterId,
+		LetterTitle,
+		LetterSignature,
+		LetterFurtherSignature,
+		Folio,
+		DateNormal,
+		DateText,
+		Origin,
+		Extent,
+		Dimensions,
+		Addendum,
+		Language
+	}
+
+	/**
+	 * Collects the string value of an element, i.e. the text of all its descendants.
+	 */
+	private static class Capture {
+		private final Field field;
+		private final int depth;
+		private final StringBuilder text = new StringBuilder();
+
+		private Capture(Field field, int depth) {
+			this.field = field;
+			this.depth = depth;
+		}
+	}
+}
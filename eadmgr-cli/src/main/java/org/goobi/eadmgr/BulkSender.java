@@ -0,0 +1,148 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.JMSException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends many process creation messages over one connection without waiting for each result in turn.
+ * <p/>
+ * Up to <code>window</code> messages are kept in flight. When the window is full, submitting blocks until the
+ * result of the oldest outstanding message has arrived. Results are collected by message ID and reported per folder
+ * by {@link #finish()}, so throughput is bound by the broker and by Goobi rather than by round trip latency.
+ */
+public class BulkSender {
+
+	private Logger logger = LoggerFactory.getLogger(BulkSender.class);
+	private GoobiMQConnection connection;
+	private int window;
+	private long resultTimeout;
+	private LinkedList<InFlight> inFlight = new LinkedList<InFlight>();
+	private List<Result> results = new ArrayList<Result>();
+
+	/**
+	 * @param connection    Connection to send messages on.
+	 * @param window        Maximum number of messages waiting for their result.
+	 * @param resultTimeout Milliseconds to wait for a single result message. Zero means to wait forever.
+	 */
+	public BulkSender(GoobiMQConnection connection, int window, long resultTimeout) {
+		if (window < 1) {
+			throw new IllegalArgumentException("Window size must be at least 1.");
+		}
+		this.connection = connection;
+		this.window = window;
+		this.resultTimeout = resultTimeout;
+	}
+
+	/**
+	 * Send a process creation message, blocking while the window is full.
+	 *
+	 * @param folderId Folder the message has been extracted from.
+	 * @param message  Message fields including the <code>id</code> field.
+	 */
+	public void submit(String folderId, Map<String, Object> message) throws JMSException, InterruptedException {
+		while (inFlight.size() >= window) {
+			collect(inFlight.removeFirst());
+		}
+		logger.trace("Sending message for folder {}, {} messages in flight", folderId, inFlight.size());
+		inFlight.addLast(new InFlight(folderId, connection.sendAsync(message)));
+	}
+
+	/**
+	 * Wait for all outstanding results.
+	 *
+	 * @return Results of all submitted messages in the order of submission.
+	 */
+	public List<Result> finish() throws InterruptedException {
+		while (!inFlight.isEmpty()) {
+			collect(inFlight.removeFirst());
+		}
+		return results;
+	}
+
+	private void collect(InFlight f) throws InterruptedException {
+		Metrics.Timer timer = Metrics.getInstance().start(Metrics.RESULT_WAIT);
+		try {
+			Map<String, Object> result = (resultTimeout > 0)
+					? f.future.get(resultTimeout, TimeUnit.MILLISECONDS)
+					: f.future.get();
+			logger.debug("Result for folder {}: {}", f.folderId, result);
+			results.add(new Result(f.folderId, "success".equals(result.get("level")),
+					String.valueOf(result.get("message"))));
+		} catch (TimeoutException e) {
+			f.future.cancel(false);
+			results.add(new Result(f.folderId, false, e.getMessage()));
+		} catch (ExecutionException e) {
+			results.add(new Result(f.folderId, false, String.valueOf(e.getCause().getMessage())));
+		} finally {
+			timer.stop();
+		}
+	}
+
+	/**
+	 * Outcome of a single process creation message.
+	 */
+	public static class Result {
+		private final String folderId;
+		private final boolean isSuccess;
+		private final String message;
+
+		private Result(String folderId, boolean isSuccess, String message) {
+			this.folderId = folderId;
+			this.isSuccess = isSuccess;
+			this.message = message;
+		}
+
+		public String getFolderId() {
+			return folderId;
+		}
+
+		public boolean isSuccess() {
+			return isSuccess;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+	}
+
+	private static class InFlight {
+		private final String folderId;
+		private final Future<Map<String, Object>> future;
+
+		private InFlight(String folderId, Future<Map<String, Object>> future) {
+			this.folderId = folderId;
+			this.future = future;
+		}
+	}
+}
@@ -24,10 +24,14 @@ package org.goobi.eadmgr;
 import org.apache.commons.cli.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
 import org.xml.sax.SAXParseException;
 
+import javax.jms.JMSException;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.MessageFormat;
@@ -44,24 +48,72 @@ class Cli extends CliBase {
 	public static final String ACTIVEMQ_CONFIGURING_URL = "http://activemq.apache.org/cms/configuring.html";
 	public static final String PROMPT_HINT = "Try 'eadmgr -h' for more information.";
 	public static final String DEFAULT_EXTRACTION_PROFILE = "schlegel.xsl";
+	public static final String ALL_FOLDERS = "all";
+	public static final String DEFAULT_DAEMON_PORT = "8751";
+	public static final String DEFAULT_RESULT_TIMEOUT = "0";
+	public static final String DEFAULT_WINDOW = "10";
+	public static final String EAD_FILE_SUFFIX = ".xml";
+	public static final String DEFAULT_MAX_ERRORS = "100";
+	public static final String DEFAULT_CHUNK_SIZE = "10";
+	public static final String METRICS_JSON = "json";
+	public static final String ACTION_FIELD = "action";
+	public static final String ACTION_CREATE = "create";
+	public static final String ACTION_UPDATE = "update";
+	public static final String METRICS_PROMETHEUS = "prometheus";
 	public static final String IMPLEMENTATION_VERSION = Cli.class.getPackage().getImplementationVersion();
 	private String[] args;
 	private Options options;
 	private File eadFile;
+	private List<File> validateFiles;
+	private int threads;
+	private int maxErrors;
+	private int chunkSize;
 	private String brokerUrl;
 	private String doctype;
 	private String template;
 	private String folderId;
+	private Collection<String> folderIds;
 	private boolean isDryRun;
 	private boolean isValidateOption;
+	private boolean isKeepIndex;
+	private boolean isIndent;
+	private PayloadEncoding payloadEncoding;
+	private String metricsFormat;
 	private Collection<String> collections;
 	private Logger logger;
 	private String subjectQueue;
+	private String updateQueue;
 	private Commands command;
 	private boolean isUseFolderId;
 	private Map<String, String> userMessageFields;
 	private String topicQueue;
+	private long resultTimeout;
+	private int window;
 	private String extractionProfile;
+	private Extractors extractorType;
+	private Extractor extractor;
+	private String xsltFactory;
+	private Readers reader;
+	private int daemonPort;
+	private long cacheBudget;
+	private List<File> preloadFiles;
+	private PrintStream out;
+	private EADDocumentCache documentCache;
+
+	public Cli() {
+		this(System.out, null);
+	}
+
+	/**
+	 * Create a CLI instance for running commands within a long-running JVM.
+	 *
+	 * @param out           Stream to print command output to.
+	 * @param documentCache Cache to obtain parsed EAD documents from.
+	 */
+	public Cli(PrintStream out, EADDocumentCache documentCache) {
+		this.out = out;
+		this.documentCache = documentCache;
+	}
 
 	public static void main(String[] args) {
 		Cli cli = new Cli();
@@ -69,7 +121,7 @@ class Cli extends CliBase {
 	}
 
 	private void println(String msg) {
-		System.out.println(msg);
+		out.println(msg);
 	}
 
 	private void printList(List<String> list) {
@@ -89,24 +141,106 @@ class Cli extends CliBase {
 		mainCommands.addOption(new Option("l", "list-folder-ids", false, "List all folder IDs available for process creation."));
 		mainCommands.addOption(new Option("c", "create-process", true,
 				"Extracted data for given folder ID as process creation message to configured ActiveMQ server."));
+		mainCommands.addOption(new Option("b", "batch-create-processes", true, MessageFormat.format(
+				"Like ''create-process'' but for several folders at once. The EAD document is read and transformed only once. " +
+						"Argument is either a comma separated list of folder IDs, \"{0}\" for every folder in the document " +
+						"or \"@<file>\" for reading folder IDs from a file, one per line.", ALL_FOLDERS)));
+		mainCommands.addOption(OptionBuilder
+				.withLongOpt("sync")
+				.withDescription(MessageFormat.format("Like ''batch-create-processes'' for every folder in the document, but only " +
+						"send messages for folders that are new or whose extracted data has changed since the last sync. " +
+						"The \"{0}\" field of the message is \"{1}\" for new and \"{2}\" for changed folders. Hashes of " +
+						"successfully sent folders are stored in a file next to the EAD file with the suffix \"{3}\".",
+						ACTION_FIELD, ACTION_CREATE, ACTION_UPDATE, SyncStore.STORE_FILE_SUFFIX)).create());
+		mainCommands.addOption(OptionBuilder
+				.withLongOpt("daemon")
+				.withDescription(MessageFormat.format("Run as daemon that keeps EAD documents, schema and extraction profiles in memory " +
+						"and accepts eadmgr command lines, one argument per line, as HTTP POST requests to {0} on the local host. " +
+						"EAD files given as arguments are read on startup.", DaemonServer.RUN_PATH)).create());
 		options.addOptionGroup(mainCommands);
 
 		// additional switches
 		options.addOption(OptionBuilder
 				.withLongOpt("validate")
-				.withDescription("Validate XML structure of the EAD document. Exits with error code 1 if validation fails. Can be used without other commands for just validating files.").create());
+				.withDescription("Validate XML structure of the EAD document. Exits with error code 1 if validation fails. " +
+						"Can be used without other commands for just validating files. In that case several files or directories " +
+						"can be given, which are searched for \"*" + EAD_FILE_SUFFIX + "\" files and validated in parallel.").create());
 		options.addOption(OptionBuilder
 				.withLongOpt("dry-run")
 				.withDescription("Print folder information instead of sending it.").create());
+		options.addOption(OptionBuilder
+				.withLongOpt("compact")
+				.withDescription("Don't indent the extracted XML sent with process creation messages.").create());
+		options.addOption(OptionBuilder
+				.withLongOpt("payload-encoding")
+				.withDescription(MessageFormat.format("How the extracted XML is sent with process creation messages. " +
+						"\"{0}\" sends it as string in the \"{3}\" field. \"{1}\" and \"{2}\" send it compressed as bytes " +
+						"in the \"{4}\" field and name the encoding in the \"{5}\" field, which consumers have to support. " +
+						"If not given \"{0}\" is used.",
+						PayloadEncoding.Plain.getName(), PayloadEncoding.Gzip.getName(), PayloadEncoding.Deflate.getName(),
+						PayloadEncoding.XML_FIELD, PayloadEncoding.XML_BYTES_FIELD, PayloadEncoding.XML_ENCODING_FIELD))
+				.hasArg()
+				.create());
+		options.addOption(OptionBuilder
+				.withLongOpt("metrics")
+				.withDescription(MessageFormat.format("Print wall time, CPU time and allocated bytes of each processing stage " +
+						"after the command has finished, either as \"{0}\" or in \"{1}\" text format. " +
+						"In daemon mode, metrics of all requests are served at {2}.",
+						METRICS_JSON, METRICS_PROMETHEUS, DaemonServer.METRICS_PATH))
+				.hasArg()
+				.create());
 		options.addOption("v", "verbose", false, "Be verbose about what is going on.");
 		options.addOption("u", "url", true, MessageFormat.format("ActiveMQ Broker URL. If not given the broker is contacted at \"{0}\".\n" +
 				"Note that using the failover protocol will block the program forever if the ActiveMQ host is not reachable unless you specify the \"timeout\" parameter in the URL. See {1} for more information.", DEFAULT_BROKER_URL, ACTIVEMQ_CONFIGURING_URL));
 		options.addOption("q", "queue", true, MessageFormat.format("ActiveMQ Subject Queue. If not given messages get enqueue at \"{0}\".", DEFAULT_SUBJECT_QUEUE));
+		options.addOption(OptionBuilder
+				.withLongOpt("update-queue")
+				.withDescription("ActiveMQ Subject Queue for messages about changed folders when syncing. If not given they are " +
+						"enqueued at the same queue as process creation messages.")
+				.hasArg()
+				.create());
 		options.addOption(OptionBuilder
 				.withLongOpt("topic-queue")
 				.withDescription(MessageFormat.format("ActiveMQ result topic Queue. If not given wait for result message posting at \"{0}\".", DEFAULT_RESULT_TOPIC))
 				.hasArg()
 				.create());
+		options.addOption(OptionBuilder
+				.withLongOpt("result-timeout")
+				.withDescription(MessageFormat.format("Seconds to wait for the result message of a process creation. " +
+						"If not given \"{0}\" is used, which means to wait forever.", DEFAULT_RESULT_TIMEOUT))
+				.hasArg()
+				.create());
+		options.addOption(OptionBuilder
+				.withLongOpt("window")
+				.withDescription(MessageFormat.format("Maximum number of process creation messages awaiting their result " +
+						"when creating processes for several folders. If not given {0} is used.", DEFAULT_WINDOW))
+				.hasArg()
+				.create());
+		options.addOption(OptionBuilder
+				.withLongOpt("threads")
+				.withDescription("Number of files validated or, when reading indexed EAD files, number of folder chunks " +
+						"extracted at the same time. If not given the number of available processors is used.")
+				.hasArg()
+				.create());
+		options.addOption(OptionBuilder
+				.withLongOpt("chunk-size")
+				.withDescription(MessageFormat.format("Number of folders parsed and transformed together when extracting " +
+						"several folders of an indexed EAD file. If not given {0} is used.", DEFAULT_CHUNK_SIZE))
+				.hasArg()
+				.create());
+		options.addOption(OptionBuilder
+				.withLongOpt("keep-index")
+				.withDescription(MessageFormat.format("Write the folder index built by reader \"{0}\" to an index file " +
+						"next to the EAD file, named like it with the suffix \"{1}\", so that later runs don''t " +
+						"scan the EAD file again. An existing index file is used and kept up to date in any case. " +
+						"If not given no index file is created.", Readers.Index.getName(), FolderIndex.INDEX_FILE_SUFFIX))
+				.create());
+		options.addOption(OptionBuilder
+				.withLongOpt("max-errors")
+				.withDescription(MessageFormat.format("Number of validation errors reported per file before validation " +
+						"of the file is stopped. If not given {0} is used.", DEFAULT_MAX_ERRORS))
+				.hasArg()
+				.create());
 		options.addOption("t", "template", true, MessageFormat.format("Goobi Process Template name. If not given \"{0}\" is used.", DEFAULT_PROCESS_TEMPLATE));
 		options.addOption("d", "doctype", true, MessageFormat.format("Goobi Doctype name. If not given \"{0}\" is used.", DEFAULT_DOCTYPE));
 		options.addOption(OptionBuilder
@@ -122,6 +256,45 @@ class Cli extends CliBase {
 				.withDescription("User defined option in the form of <key>=<value> to append to the ActiveMQ message.")
 				.hasArgs()
 				.create("O"));
+		options.addOption("r", "reader", true, MessageFormat.format("How the EAD document is read. \"{0}\" parses the whole document into memory, " +
+				"\"{1}\" reads it folder by folder so that memory usage only depends on the size of a single folder, " +
+				"\"{2}\" uses a folder index of the EAD file to list folder IDs and to read single folders " +
+				"by seeking to their position in the file, " +
+				"\"{3}\" reads only the fields of the default extraction profile into a compact model, which is " +
+				"much smaller than the whole document in memory, " +
+				"\"{4}\" hands the file to the extractor as it is, so that a streaming XSLT processor with a " +
+				"streamable extraction profile can extract all folders in bounded memory. " +
+				"If not given \"{2}\" is used for listing folder IDs of an EAD file with an index file or with " +
+				"--keep-index, \"{1}\" for listing folder IDs of other files and \"{0}\" otherwise.",
+				Readers.Dom.getName(), Readers.Stream.getName(), Readers.Index.getName(), Readers.Model.getName(),
+				Readers.Source.getName()));
+		options.addOption(OptionBuilder
+				.withLongOpt("xslt-factory")
+				.withDescription("Class name of the javax.xml.transform.TransformerFactory of the XSLT processor that runs " +
+						"extraction profiles, e.g. of an XSLT 3.0 processor on the classpath that can run a streamable " +
+						"profile. If not given the JAXP default processor is used.")
+				.hasArg()
+				.create());
+		options.addOption(OptionBuilder
+				.withLongOpt("extractor")
+				.withDescription(MessageFormat.format("How folder data is extracted. \"{0}\" runs the extraction profile, " +
+						"\"{1}\" uses a built-in Java implementation of the profile \"{2}\" with identical output. " +
+						"If not given \"{0}\" is used.",
+						Extractors.Xslt.getName(), Extractors.Native.getName(), SchlegelExtractor.EXTRACTION_PROFILE))
+				.hasArg()
+				.create());
+		options.addOption(OptionBuilder
+				.withLongOpt("port")
+				.withDescription(MessageFormat.format("Port for daemon mode. If not given {0} is used.", DEFAULT_DAEMON_PORT))
+				.hasArg()
+				.create());
+		options.addOption(OptionBuilder
+				.withLongOpt("cache-budget")
+				.withDescription("Megabytes of heap for EAD documents kept in memory in daemon mode. Least recently " +
+						"used documents are dropped when the estimated size of all documents exceeds the budget. " +
+						"If not given a quarter of the maximum heap size is used.")
+				.hasArg()
+				.create());
 		options.addOption("x", "extraction-profile", true, MessageFormat.format("XSLT EAD extraction profile name. Either an absolute pathname or a file that can be found on the classpath. If not given \"{0}\" is used.", DEFAULT_EXTRACTION_PROFILE));
 	}
 
@@ -139,17 +312,43 @@ class Cli extends CliBase {
 
 		brokerUrl = cmdl.getOptionValue("u", DEFAULT_BROKER_URL);
 		subjectQueue = cmdl.getOptionValue("q", DEFAULT_SUBJECT_QUEUE);
+		updateQueue = cmdl.getOptionValue("update-queue", subjectQueue);
 		topicQueue = cmdl.getOptionValue("result-topic", DEFAULT_RESULT_TOPIC);
+		resultTimeout = Long.parseLong(cmdl.getOptionValue("result-timeout", DEFAULT_RESULT_TIMEOUT)) * 1000;
+		window = Integer.parseInt(cmdl.getOptionValue("window", DEFAULT_WINDOW));
+		maxErrors = Integer.parseInt(cmdl.getOptionValue("max-errors", DEFAULT_MAX_ERRORS));
+		chunkSize = Integer.parseInt(cmdl.getOptionValue("chunk-size", DEFAULT_CHUNK_SIZE));
+		threads = Integer.parseInt(cmdl.getOptionValue("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
 		doctype = cmdl.getOptionValue("d", DEFAULT_DOCTYPE);
 		isDryRun = cmdl.hasOption("dry-run");
 		isValidateOption = cmdl.hasOption("validate");
+		isKeepIndex = cmdl.hasOption("keep-index");
+		isIndent = !cmdl.hasOption("compact");
+		metricsFormat = cmdl.getOptionValue("metrics");
+		if ((metricsFormat != null) && !METRICS_JSON.equals(metricsFormat) && !METRICS_PROMETHEUS.equals(metricsFormat)) {
+			throw new Exception("Unknown metrics format: " + metricsFormat);
+		}
+		payloadEncoding = PayloadEncoding.forName(cmdl.getOptionValue("payload-encoding", PayloadEncoding.Plain.getName()));
 		template = cmdl.getOptionValue("t", DEFAULT_PROCESS_TEMPLATE);
 		isUseFolderId = cmdl.hasOption("use-folder-id");
 		userMessageFields = splitAndMap(cmdl.getOptionValues("O"));
 		extractionProfile = cmdl.getOptionValue("x", DEFAULT_EXTRACTION_PROFILE);
+		xsltFactory = cmdl.getOptionValue("xslt-factory");
+		extractorType = Extractors.forName(cmdl.getOptionValue("extractor", Extractors.Xslt.getName()));
+		if ((extractorType == Extractors.Native) && !SchlegelExtractor.EXTRACTION_PROFILE.equals(extractionProfile)) {
+			throw new Exception("Extractor '" + Extractors.Native.getName() + "' only supports the extraction profile "
+					+ SchlegelExtractor.EXTRACTION_PROFILE + ".");
+		}
+		if (cmdl.hasOption("r")) {
+			reader = Readers.forName(cmdl.getOptionValue("r"));
+		}
 
-		if (command == Commands.Create) {
-			folderId = cmdl.getOptionValue('c');
+		if ((command == Commands.Create) || (command == Commands.BatchCreate) || (command == Commands.Sync)) {
+			if (command == Commands.Create) {
+				folderId = cmdl.getOptionValue('c');
+			} else if (command == Commands.BatchCreate) {
+				folderIds = parseFolderIds(cmdl.getOptionValue('b'));
+			}
 			collections = new ArrayList<String>();
 			String[] optVal = cmdl.getOptionValues("collection");
 			if (optVal != null) {
@@ -161,16 +360,42 @@ class Cli extends CliBase {
 		}
 
 		String[] leftOverArgs = cmdl.getArgs();
-		if (leftOverArgs.length == 0) {
+		if (command == Commands.Daemon) {
+			daemonPort = Integer.parseInt(cmdl.getOptionValue("port", DEFAULT_DAEMON_PORT));
+			if (cmdl.hasOption("cache-budget")) {
+				cacheBudget = Long.parseLong(cmdl.getOptionValue("cache-budget")) * 1024 * 1024;
+			}
+			preloadFiles = new ArrayList<File>();
+			for (String filename : leftOverArgs) {
+				preloadFiles.add(checkReadable(new File(filename)));
+			}
+		} else if (leftOverArgs.length == 0) {
 			throw new Exception("No filename given.");
-		}
-		if (leftOverArgs.length > 1) {
+		} else if ((command == Commands.Validate) && ((leftOverArgs.length > 1) || new File(leftOverArgs[0]).isDirectory())) {
+			validateFiles = new ArrayList<File>();
+			for (String filename : leftOverArgs) {
+				File file = new File(filename);
+				if (file.isDirectory()) {
+					collectEadFiles(file, validateFiles);
+				} else {
+					validateFiles.add(checkReadable(file));
+				}
+			}
+			if (validateFiles.isEmpty()) {
+				throw new Exception("No " + EAD_FILE_SUFFIX + " files found.");
+			}
+		} else if (leftOverArgs.length > 1) {
 			throw new Exception("Only one filename allowed.");
+		} else {
+			this.eadFile = checkReadable(new File(leftOverArgs[0]));
 		}
 
-		this.eadFile = new File(leftOverArgs[0]);
-		if (!eadFile.exists() || !eadFile.canRead() || !eadFile.isFile()) {
-			throw new Exception("Cannot read " + eadFile.getAbsolutePath());
+		if ((reader == null) && (command == Commands.List)) {
+			// building an index takes two passes over the file, which only pays off if the index is kept
+			boolean isIndexed = isKeepIndex || FolderIndex.getIndexFile(eadFile).isFile();
+			reader = isIndexed ? Readers.Index : Readers.Stream;
+		} else if (reader == null) {
+			reader = Readers.Dom;
 		}
 
 		boolean verbose = cmdl.hasOption('v');
@@ -178,6 +403,28 @@ class Cli extends CliBase {
 		logger = LoggerFactory.getLogger(Cli.class);
 	}
 
+	private File checkReadable(File file) throws Exception {
+		if (!file.exists() || !file.canRead() || !file.isFile()) {
+			throw new Exception("Cannot read " + file.getAbsolutePath());
+		}
+		return file;
+	}
+
+	private void collectEadFiles(File dir, List<File> result) throws Exception {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			throw new Exception("Cannot read directory " + dir.getAbsolutePath());
+		}
+		Arrays.sort(files);
+		for (File file : files) {
+			if (file.isDirectory()) {
+				collectEadFiles(file, result);
+			} else if (file.getName().endsWith(EAD_FILE_SUFFIX) && file.canRead()) {
+				result.add(file);
+			}
+		}
+	}
+
 	private Map<String, String> splitAndMap(String[] optionValues) throws Exception {
 		if (optionValues != null) {
 			HashMap<String, String> result = new HashMap<String, String>();
@@ -194,6 +441,50 @@ class Cli extends CliBase {
 		return null;
 	}
 
+	private Collection<String> parseFolderIds(String optionValue) throws Exception {
+		if (ALL_FOLDERS.equals(optionValue)) {
+			return null;
+		}
+
+		Set<String> result = new LinkedHashSet<String>();
+		if (optionValue.startsWith("@")) {
+			result.addAll(readFolderIdFile(new File(optionValue.substring(1))));
+		} else {
+			for (String s : optionValue.split(",")) {
+				if (!s.trim().isEmpty()) {
+					result.add(s.trim());
+				}
+			}
+		}
+
+		if (result.isEmpty()) {
+			throw new Exception("Option 'batch-create-processes' requires at least one folder ID.");
+		}
+		return result;
+	}
+
+	private List<String> readFolderIdFile(File file) throws Exception {
+		if (!file.exists() || !file.canRead() || !file.isFile()) {
+			throw new Exception("Cannot read folder ID file " + file.getAbsolutePath());
+		}
+
+		List<String> result = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				// skip blank lines and comments
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					result.add(line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return result;
+	}
+
 	private void determineCommand(CommandLine cmdl) {
 		if (cmdl.hasOption('h')) {
 			command = Commands.Help;
@@ -201,6 +492,12 @@ class Cli extends CliBase {
 			command = Commands.List;
 		} else if (cmdl.hasOption("c")) {
 			command = Commands.Create;
+		} else if (cmdl.hasOption("b")) {
+			command = Commands.BatchCreate;
+		} else if (cmdl.hasOption("sync")) {
+			command = Commands.Sync;
+		} else if (cmdl.hasOption("daemon")) {
+			command = Commands.Daemon;
 		} else if (cmdl.hasOption("validate")) {
 			command = Commands.Validate;
 		} else {
@@ -217,41 +514,252 @@ class Cli extends CliBase {
 		}
 
 		logger.info("Version: " + IMPLEMENTATION_VERSION);
+
+		if (command == Commands.Daemon) {
+			return runDaemon();
+		}
+
+		if (metricsFormat == null) {
+			return process();
+		}
+
+		Metrics.Snapshot before = Metrics.getInstance().snapshot();
+		try {
+			return process();
+		} finally {
+			Metrics.Snapshot run = Metrics.getInstance().snapshot().minus(before);
+			println(METRICS_JSON.equals(metricsFormat) ? run.toJson() : run.toPrometheus());
+		}
+	}
+
+	private int process() throws Exception {
+
+		if (validateFiles != null) {
+			return validateAll();
+		}
+
 		logger.info("Processing " + eadFile.getAbsolutePath());
 
-		int returnCode = 0;
+		// validation without other commands doesn't need the document
+		if (command == Commands.Validate) {
+			return validateStreaming() ? 0 : 1;
+		}
+
+		if (command != Commands.List) {
+			extractor = (extractorType == Extractors.Native)
+					? new SchlegelExtractor()
+					: XsltExtractor.forProfile(extractionProfile, xsltFactory);
+		}
+
+		FolderReader folderReader = openFolderReader();
+		try {
+			switch (command) {
+				case List:
+					printList(folderReader.getFolderIds());
+					return 0;
+				case Create:
+					byte[] vd = extractFolder(folderReader, folderId);
+					return send(folderId, vd, template, doctype, brokerUrl, collections, userMessageFields);
+				case BatchCreate:
+				case Sync:
+					return sendAll(folderReader, this.folderIds);
+				default:
+					return 0;
+			}
+		} finally {
+			folderReader.close();
+		}
+	}
+
+	private FolderReader openFolderReader() throws Exception {
+		switch (reader) {
+			case Dom:
+				return readDocument();
+			case Model:
+				return readModel();
+		}
+
+		// the other readers don't validate while reading
+		if (isValidateOption && !validateStreaming()) {
+			throw new Exception(eadFile.getAbsolutePath() + " is not valid according to schema.");
+		}
+		switch (reader) {
+			case Stream:
+				return new EADStreamReader(eadFile);
+			case Index:
+				return new ParallelExtractor(eadFile, FolderIndex.forFile(eadFile, isKeepIndex), threads, chunkSize);
+			default:
+				return new SourceFolderReader(eadFile);
+		}
+	}
+
+	private EADDocument readDocument() throws Exception {
+		EADDocument ead;
+		if (documentCache != null) {
+			ead = documentCache.get(eadFile, isValidateOption);
+		} else {
+			ead = new EADDocument();
+			ead.readEadFile(eadFile, isValidateOption);
+		}
+
+		// Validation happens while reading. Any validation error will throw an exception.
+		if (isValidateOption) {
+			logger.info(eadFile.getAbsolutePath() + " seems to be valid according to schema.");
+		}
+		return ead;
+	}
+
+	private ArchiveModel readModel() throws Exception {
+		if (!DEFAULT_EXTRACTION_PROFILE.equals(extractionProfile) && (command != Commands.List)) {
+			throw new Exception("Reader '" + Readers.Model.getName() + "' only supports the extraction profile "
+					+ DEFAULT_EXTRACTION_PROFILE + ".");
+		}
 
-		EADDocument ead = new EADDocument();
-        ead.readEadFile(eadFile, isValidateOption);
+		ArchiveModel model;
+		if (documentCache != null) {
+			model = documentCache.getModel(eadFile, isValidateOption);
+		} else {
+			model = ArchiveModel.read(eadFile, isValidateOption);
+		}
 
 		// Validation happens while reading. Any validation error will throw an exception.
 		if (isValidateOption) {
 			logger.info(eadFile.getAbsolutePath() + " seems to be valid according to schema.");
 		}
+		return model;
+	}
 
-		switch (command) {
-			case List:
-				List<String> folderIds = ead.getFolderIds();
-				printList(folderIds);
-				break;
-			case Create:
-				Document vd = ead.extractFolderData(folderId, extractionProfile);
-				returnCode = send(vd, template, doctype, brokerUrl, collections, userMessageFields);
-				break;
-			case Validate:
-				// If --validate option was used as the only command, just quit here.
-				break;
+	private byte[] extractFolder(FolderReader folderReader, final String folderId) throws Exception {
+		final byte[][] result = new byte[1][];
+		folderReader.extract(Collections.singletonList(folderId), extractor, isIndent, new FolderHandler() {
+			@Override
+			public void folder(String id, byte[] xml) {
+				result[0] = xml;
+			}
+		});
+		if (result[0] == null) {
+			throw new Exception("No folder with ID " + folderId);
 		}
+		return result[0];
+	}
 
-		return returnCode;
+	private int runDaemon() throws Exception {
+		if (isDaemonRequest()) {
+			throw new Exception("Already running as daemon.");
+		}
+
+		EADDocumentCache cache = (cacheBudget > 0) ? new EADDocumentCache(cacheBudget) : new EADDocumentCache();
+		logger.info("Keeping up to {} MB of EAD documents in memory", cache.getBudget() / 1024 / 1024);
+		final DaemonServer daemon = new DaemonServer(daemonPort, cache);
+
+		// warm up everything that would otherwise be loaded by the first request
+		EADSchema.getInstance();
+		TemplatesCache.getInstance().get(extractionProfile, xsltFactory);
+		for (File file : preloadFiles) {
+			logger.info("Reading " + file.getAbsolutePath());
+			daemon.getDocumentCache().get(file, isValidateOption);
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				daemon.stop();
+			}
+		});
+		daemon.serve();
+		return 0;
 	}
 
-	private int send(Document vd, String template, String doctype, String brokerUrl, Collection<String> collections, Map<String, String> userMessageFields) throws Exception {
-		logger.info("Sending XML message to ActiveMQ server at {}", brokerUrl);
-		logger.trace("Collections: {}", collections);
-		logger.trace("Process template: {}", template);
-		logger.trace("Message doctype: {}", doctype);
+	private boolean validateStreaming() throws Exception {
+		List<SAXParseException> errors = new StreamingValidator(EADSchema.getInstance(), maxErrors).validate(eadFile);
+		if (!errors.isEmpty()) {
+			for (SAXParseException e : errors) {
+				logger.error(StreamingValidator.format(e));
+				if (isDaemonRequest()) {
+					println(StreamingValidator.format(e));
+				}
+			}
+			logger.error("{} is not valid according to schema, {} errors reported.", eadFile.getAbsolutePath(), errors.size());
+			return false;
+		}
+		logger.info(eadFile.getAbsolutePath() + " seems to be valid according to schema.");
+		return true;
+	}
 
+	private int validateAll() throws Exception {
+		logger.info("Validating {} files using {} threads", validateFiles.size(), threads);
+		ParallelValidator validator = new ParallelValidator(EADSchema.getInstance(), threads, maxErrors);
+
+		int invalid = 0;
+		for (ParallelValidator.Result result : validator.validate(validateFiles)) {
+			if (result.isValid()) {
+				println("valid\t" + result.getFile().getPath());
+			} else {
+				for (String error : result.getErrors()) {
+					println("invalid\t" + result.getFile().getPath() + "\t" + error);
+				}
+				invalid++;
+			}
+		}
+
+		if (invalid > 0) {
+			logger.error("{} of {} files are not valid according to schema.", invalid, validateFiles.size());
+			return 1;
+		}
+		logger.info("All {} files seem to be valid according to schema.", validateFiles.size());
+		return 0;
+	}
+
+	private int sendAll(FolderReader folderReader, Collection<String> folderIds) throws Exception {
+		final Set<String> missing = (folderIds == null) ? null : new LinkedHashSet<String>(folderIds);
+		final Batch batch = new Batch();
+		try {
+			// folders are sent as soon as they are extracted instead of being collected first
+			folderReader.extract(folderIds, extractor, isIndent, new FolderHandler() {
+				@Override
+				public void folder(String folderId, byte[] xml) throws Exception {
+					if (missing != null) {
+						missing.remove(folderId);
+					}
+					batch.add(folderId, xml);
+				}
+			});
+
+			if (missing != null) {
+				for (String id : missing) {
+					batch.fail(id, "No folder with ID " + id);
+				}
+			}
+			return batch.finish();
+		} finally {
+			batch.close();
+		}
+	}
+
+	private int reportBatch(int failed, int total) {
+		if (failed > 0) {
+			logger.error("Process creation failed for {} of {} folders.", failed, total);
+			return 1;
+		}
+		if (!isDryRun) {
+			logger.info("Processes for {} folders have been successfully created.", total);
+		}
+		return 0;
+	}
+
+	private GoobiMQConnection openConnection(String queue) throws JMSException {
+		if (isDaemonRequest()) {
+			// keep the connection open for following requests
+			return GoobiMQConnectionPool.getInstance(brokerUrl).borrow(queue, topicQueue);
+		}
+		return new GoobiMQConnection(brokerUrl, queue, topicQueue);
+	}
+
+	private boolean isDaemonRequest() {
+		return documentCache != null;
+	}
+
+	private Map<String, Object> buildMessage(String folderId, byte[] xml) throws Exception {
 		String uuid = (isUseFolderId) ? folderId : String.valueOf(java.util.UUID.randomUUID());
 
 		Map<String, Object> m = new HashMap<String, Object>();
@@ -260,18 +768,49 @@ class Cli extends CliBase {
 		m.put("docType", doctype);
 		m.put("collections", collections);
 		m.put("userMessageFields", userMessageFields);
-		m.put("xml", String.valueOf(XMLSerializer.serialize(vd)));
+		Metrics.Timer timer = Metrics.getInstance().start(Metrics.ENCODE);
+		try {
+			if (payloadEncoding == PayloadEncoding.Plain) {
+				m.put(PayloadEncoding.XML_FIELD, new String(xml, "UTF-8"));
+				Metrics.getInstance().count(Metrics.PAYLOAD_BYTES, xml.length);
+			} else {
+				byte[] encoded = payloadEncoding.encode(xml);
+				logger.debug("Encoded XML of folder {} using {}: {} of {} bytes", new Object[]{
+						folderId, payloadEncoding.getName(), encoded.length, xml.length});
+				m.put(PayloadEncoding.XML_BYTES_FIELD, encoded);
+				m.put(PayloadEncoding.XML_ENCODING_FIELD, payloadEncoding.getName());
+				Metrics.getInstance().count(Metrics.PAYLOAD_BYTES, encoded.length);
+			}
+		} finally {
+			timer.stop();
+		}
+		return m;
+	}
+
+	private int send(String folderId, byte[] xml, String template, String doctype, String brokerUrl, Collection<String> collections, Map<String, String> userMessageFields) throws Exception {
+		logger.info("Sending XML message to ActiveMQ server at {}", brokerUrl);
+		logger.trace("Collections: {}", collections);
+		logger.trace("Process template: {}", template);
+		logger.trace("Message doctype: {}", doctype);
+
+		Map<String, Object> m = buildMessage(folderId, xml);
+		Object uuid = m.get("id");
 
 		if (isDryRun) {
 			println(m.toString());
 		} else {
-			GoobiMQConnection conn = new GoobiMQConnection(brokerUrl, subjectQueue, topicQueue);
-			Map<String, Object> result = conn.sendAndWaitForResult(m);
-			conn.close();
+			GoobiMQConnection conn = openConnection(subjectQueue);
+			Map<String, Object> result;
+			try {
+				conn.setResultTimeout(resultTimeout);
+				result = conn.sendAndWaitForResult(m);
+			} finally {
+				conn.close();
+			}
 
 			logger.debug(String.valueOf(result));
 
-			if (!result.get("level").equals("success")) {
+			if (!"success".equals(result.get("level"))) {
 				logger.error(String.valueOf(result.get("message")));
 				return 1;
 			} else {
@@ -282,10 +821,147 @@ class Cli extends CliBase {
 		return 0;
 	}
 
+	/**
+	 * Process creation for several folders. Messages are sent through a single connection with up to
+	 * <code>window</code> messages awaiting their result at a time.
+	 * <p/>
+	 * When syncing, folders whose extracted data is unchanged since the last sync are skipped, and messages about
+	 * changed folders go to the update queue. Hashes of successfully sent folders are stored when the batch is
+	 * finished.
+	 */
+	private class Batch {
+		private GoobiMQConnection connection;
+		private BulkSender sender;
+		private GoobiMQConnection updateConnection;
+		private BulkSender updateSender;
+		private SyncStore syncStore;
+		private Map<String, String> hashes = new HashMap<String, String>();
+		private Map<String, String> actions = new HashMap<String, String>();
+		private int total;
+		private int failed;
+		private int unchanged;
+		private boolean isCollected;
+
+		private Batch() throws Exception {
+			if (command == Commands.Sync) {
+				syncStore = SyncStore.forFile(eadFile);
+			}
+			if (!isDryRun) {
+				logger.info("Sending XML messages to ActiveMQ server at {}", brokerUrl);
+				connection = openConnection(subjectQueue);
+				sender = new BulkSender(connection, window, resultTimeout);
+				if ((syncStore != null) && !updateQueue.equals(subjectQueue)) {
+					updateConnection = openConnection(updateQueue);
+					updateSender = new BulkSender(updateConnection, window, resultTimeout);
+				}
+			}
+		}
+
+		private void add(String folderId, byte[] xml) throws Exception {
+			String action = null;
+			if (syncStore != null) {
+				String hash = SyncStore.hash(xml);
+				String previous = syncStore.get(folderId, extractionProfile);
+				if (hash.equals(previous)) {
+					logger.debug("Folder {} is unchanged", folderId);
+					unchanged++;
+					return;
+				}
+				action = (previous == null) ? ACTION_CREATE : ACTION_UPDATE;
+				hashes.put(folderId, hash);
+				actions.put(folderId, action);
+			}
+
+			logger.info("Processing folder {}", folderId);
+			Map<String, Object> m = buildMessage(folderId, xml);
+			if (action != null) {
+				m.put(ACTION_FIELD, action);
+			}
+			total++;
+			if (isDryRun) {
+				println(m.toString());
+			} else if (ACTION_UPDATE.equals(action) && (updateSender != null)) {
+				updateSender.submit(folderId, m);
+			} else {
+				sender.submit(folderId, m);
+			}
+		}
+
+		private void fail(String folderId, String reason) {
+			logger.error(reason);
+			total++;
+			failed++;
+		}
+
+		private int finish() throws Exception {
+			collectAll();
+
+			if (syncStore != null) {
+				logger.info("{} folders are unchanged since the last sync.", unchanged);
+				if (total == 0) {
+					return 0;
+				}
+			}
+			return reportBatch(failed, total);
+		}
+
+		private void collectAll() throws InterruptedException {
+			if (!isCollected) {
+				isCollected = true;
+				collect(sender);
+				collect(updateSender);
+			}
+		}
+
+		private void collect(BulkSender bulkSender) throws InterruptedException {
+			if (bulkSender == null) {
+				return;
+			}
+			for (BulkSender.Result result : bulkSender.finish()) {
+				String id = result.getFolderId();
+				if (result.isSuccess()) {
+					if (ACTION_UPDATE.equals(actions.get(id))) {
+						logger.info("Process for folder {} has been successfully updated.", id);
+					} else {
+						logger.info("Process for folder {} has been successfully created.", id);
+					}
+					if (syncStore != null) {
+						syncStore.put(id, extractionProfile, hashes.get(id));
+					}
+				} else {
+					logger.error("Process creation for folder {} failed: {}", id, result.getMessage());
+					failed++;
+				}
+			}
+		}
+
+		private void close() throws Exception {
+			try {
+				if ((syncStore != null) && !isDryRun) {
+					// remember the folders sent so far even if the batch has been aborted
+					try {
+						collectAll();
+					} finally {
+						syncStore.write();
+					}
+				}
+			} finally {
+				if (connection != null) {
+					connection.close();
+				}
+				if (updateConnection != null) {
+					updateConnection.close();
+				}
+			}
+		}
+	}
+
 	private void printUsageInformation() {
 		HelpFormatter formatter = new HelpFormatter();
-		formatter.setWidth(120);
-		formatter.printHelp("eadmgr [Options] [File]\nVersion: " + IMPLEMENTATION_VERSION, options);
+		PrintWriter pw = new PrintWriter(out);
+		formatter.printHelp(pw, 120, "eadmgr [Options] [File]\nVersion: " + IMPLEMENTATION_VERSION, null, options,
+				formatter.getLeftPadding(), formatter.getDescPadding(), null);
+		pw.flush();
 	}
 
 	@Override
@@ -300,9 +976,15 @@ class Cli extends CliBase {
             if (ex instanceof SAXParseException) {
                 SAXParseException sax = (SAXParseException) ex;
                 logger.error(ex.getMessage() + " (at line " + sax.getLineNumber() + ")");
+                if (isDaemonRequest()) {
+                    println(ex.getMessage() + " (at line " + sax.getLineNumber() + ")");
+                }
                 return;
             } else {
                 logger.error(msg);
+                if (isDaemonRequest()) {
+                    println(String.valueOf(ex.getMessage()));
+                }
             }
 		} else {
 			println(msg);
@@ -315,7 +997,49 @@ class Cli extends CliBase {
 		Help,
 		List,
 		Create,
-		Validate
+		BatchCreate,
+		Sync,
+		Validate,
+		Daemon
+	}
+
+	private enum Extractors {
+		Xslt,
+		Native;
+
+		public static Extractors forName(String name) throws Exception {
+			for (Extractors e : values()) {
+				if (e.getName().equals(name)) {
+					return e;
+				}
+			}
+			throw new Exception("Unknown extractor: " + name);
+		}
+
+		public String getName() {
+			return name().toLowerCase();
+		}
+	}
+
+	private enum Readers {
+		Dom,
+		Stream,
+		Index,
+		Model,
+		Source;
+
+		public static Readers forName(String name) throws Exception {
+			for (Readers r : values()) {
+				if (r.getName().equals(name)) {
+					return r;
+				}
+			}
+			throw new Exception("Unknown reader: " + name);
+		}
+
+		public String getName() {
+			return name().toLowerCase();
+		}
 	}
 }
 
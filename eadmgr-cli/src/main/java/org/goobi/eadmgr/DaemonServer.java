@@ -0,0 +1,169 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Serves eadmgr commands over HTTP from a long-running JVM.
+ * <p/>
+ * Clients POST command line arguments to <code>/run</code>, one argument per line. Each request is processed by a
+ * fresh {@link Cli} instance with exactly the semantics of a command line call, but parsed EAD documents, the
+ * compiled schema and compiled extraction profiles stay in memory between requests. The response body holds the
+ * output of the command, the exit code is sent in the <code>X-Exit-Code</code> header and as HTTP status 200
+ * (success) or 500 (failure).
+ * <p/>
+ * Processing metrics of all requests are served at <code>/metrics</code> in Prometheus text format, or as JSON
+ * with the query <code>?format=json</code>.
+ * <p/>
+ * Example: <code>printf -- '-l\n/data/schlegel.xml\n' | curl --data-binary @- http://localhost:8751/run</code>
+ * <p/>
+ * The server only listens on the loopback interface and processes one request at a time.
+ */
+public class DaemonServer {
+
+	public static final String RUN_PATH = "/run";
+	public static final String METRICS_PATH = "/metrics";
+	public static final String EXIT_CODE_HEADER = "X-Exit-Code";
+	private Logger logger = LoggerFactory.getLogger(DaemonServer.class);
+	private HttpServer server;
+	private EADDocumentCache documentCache;
+	private CountDownLatch stopped = new CountDownLatch(1);
+
+	public DaemonServer(int port, EADDocumentCache documentCache) throws IOException {
+		this.documentCache = documentCache;
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(null), port), 0);
+		server.createContext(RUN_PATH, new RunHandler());
+		server.createContext(METRICS_PATH, new MetricsHandler());
+	}
+
+	public EADDocumentCache getDocumentCache() {
+		return documentCache;
+	}
+
+	/**
+	 * Start serving requests and block until {@link #stop()} is called.
+	 */
+	public void serve() throws InterruptedException {
+		server.start();
+		logger.info("Listening on http://{}:{}{}", new Object[]{
+				server.getAddress().getHostName(), server.getAddress().getPort(), RUN_PATH});
+		stopped.await();
+	}
+
+	public void stop() {
+		logger.info("Stopping daemon");
+		server.stop(1);
+		GoobiMQConnectionPool.closeAll();
+		stopped.countDown();
+	}
+
+	private class RunHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (!"POST".equals(exchange.getRequestMethod())) {
+					exchange.sendResponseHeaders(405, -1);
+					return;
+				}
+
+				String[] args = readArguments(exchange);
+				logger.info("Running command {}", Arrays.toString(args));
+
+				ByteArrayOutputStream output = new ByteArrayOutputStream();
+				PrintStream out = new PrintStream(output, true, "UTF-8");
+				int exitCode = new Cli(out, documentCache).run(args);
+				out.flush();
+
+				byte[] body = output.toByteArray();
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+				exchange.getResponseHeaders().set(EXIT_CODE_HEADER, String.valueOf(exitCode));
+				exchange.sendResponseHeaders((exitCode == 0) ? 200 : 500, (body.length == 0) ? -1 : body.length);
+				if (body.length > 0) {
+					OutputStream os = exchange.getResponseBody();
+					os.write(body);
+					os.close();
+				}
+			} finally {
+				exchange.close();
+			}
+		}
+
+		private String[] readArguments(HttpExchange exchange) throws IOException {
+			List<String> args = new ArrayList<String>();
+			BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), "UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.isEmpty()) {
+					args.add(line);
+				}
+			}
+			return args.toArray(new String[args.size()]);
+		}
+	}
+
+	private class MetricsHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (!"GET".equals(exchange.getRequestMethod())) {
+					exchange.sendResponseHeaders(405, -1);
+					return;
+				}
+
+				Metrics.Snapshot snapshot = Metrics.getInstance().snapshot();
+				String query = exchange.getRequestURI().getQuery();
+				byte[] body;
+				if ("format=json".equals(query)) {
+					exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+					body = snapshot.toJson().getBytes("UTF-8");
+				} else {
+					exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=UTF-8");
+					body = snapshot.toPrometheus().getBytes("UTF-8");
+				}
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream os = exchange.getResponseBody();
+				os.write(body);
+				os.close();
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+}
@@ -25,151 +25,250 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.ErrorHandler;
-import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.Source;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.xpath.XPathExpressionException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStream;
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
-public class EADDocument {
+public class EADDocument implements FolderReader {
+
+	// approximate heap bytes per DOM node and per character of text and attribute values
+	private static final long ELEMENT_BYTES = 120;
+	private static final long ATTRIBUTE_BYTES = 100;
+	private static final long NODE_BYTES = 80;
+	private static final long CHAR_BYTES = 2;
 
 	private Logger logger = LoggerFactory.getLogger(EADDocument.class);
 	private Document ead;
 
+	public EADDocument() {
+	}
+
+	/**
+	 * Create an EAD document for an already parsed DOM, e.g. a single folder fragment obtained by
+	 * {@link EADStreamReader#readFolder()}.
+	 *
+	 * @param ead Parsed EAD document.
+	 */
+	public EADDocument(Document ead) {
+		this.ead = ead;
+	}
+
 	public void readEadFile(File eadFile, boolean validateAgainstSchema) throws Exception {
 		logger.trace(validateAgainstSchema ? "Read and validate" : "Reading");
 
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        dbf.setNamespaceAware(true);
+		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		dbf.setNamespaceAware(true);
 
-        if (validateAgainstSchema) {
-            Schema eadSchema = EADSchema.getInstance();
-            dbf.setSchema(eadSchema);
-        }
+		if (validateAgainstSchema) {
+			Schema eadSchema = EADSchema.getInstance();
+			dbf.setSchema(eadSchema);
+		}
 
-        DocumentBuilder db = dbf.newDocumentBuilder();
+		Metrics.Timer timer = Metrics.getInstance().start(Metrics.PARSE);
+		try {
+			DocumentBuilder db = dbf.newDocumentBuilder();
 
-        db.setErrorHandler(new ErrorHandler() {
-            @Override
-            public void warning(SAXParseException exception) throws SAXException {
-                throw exception;
-            }
+			db.setErrorHandler(new StrictErrorHandler());
+			this.ead = db.parse(eadFile);
 
-            @Override
-            public void error(SAXParseException exception) throws SAXException {
-                throw exception;
-            }
+			// http://stackoverflow.com/questions/13786607/normalization-in-dom-parsing-with-java-how-does-it-work
+			this.ead.getDocumentElement().normalize();
+		} finally {
+			timer.stop();
+		}
+	}
 
-            @Override
-            public void fatalError(SAXParseException exception) throws SAXException {
-                throw exception;
-            }
-        });
-        this.ead = db.parse(eadFile);
+	/**
+	 * Extract data for a single folder.
+	 *
+	 * @param folderId                  ID of the folder to extract.
+	 * @param extractionProfileFilename Name of the extraction profile on the classpath or in the filesystem.
+	 * @param indent                    Whether to indent the extracted XML.
+	 * @return Extracted folder document serialized as UTF-8.
+	 */
+	public byte[] extractFolderData(String folderId, String extractionProfileFilename, boolean indent) throws Exception {
+		return extractFolderData(folderId, XsltExtractor.forProfile(extractionProfileFilename), indent);
+	}
 
-        // http://stackoverflow.com/questions/13786607/normalization-in-dom-parsing-with-java-how-does-it-work
-        this.ead.getDocumentElement().normalize();
+	/**
+	 * Extract data for a single folder.
+	 *
+	 * @param folderId  ID of the folder to extract.
+	 * @param extractor Extractor to use.
+	 * @param indent    Whether to indent the extracted XML.
+	 * @return Extracted folder document serialized as UTF-8.
+	 */
+	public byte[] extractFolderData(String folderId, Extractor extractor, boolean indent) throws Exception {
+		logger.info("Extract data for {} using {}", folderId, extractor);
+		return extract(Collections.singletonList(folderId), extractor, indent).get(folderId);
 	}
 
-	public Document extractFolderData(String folderId, String extractionProfileFilename) throws Exception {
-		Source extractionProfile = getFromClasspathOrFilesystem(extractionProfileFilename);
-		logger.info("Extract data for {} using extraction profile {}", folderId, extractionProfileFilename);
-		return extract(ead, extractionProfile, folderId);
+	/**
+	 * Extract data for several folders using a single transformation of the whole EAD document.
+	 *
+	 * @param folderIds                 IDs of the folders to extract or <code>null</code> for all folders
+	 *                                  the extraction profile yields.
+	 * @param extractionProfileFilename Name of the extraction profile on the classpath or in the filesystem.
+	 * @param indent                    Whether to indent the extracted XML.
+	 * @return Extracted folder documents serialized as UTF-8 and mapped by folder ID, in the order of the given IDs
+	 *         or, if no IDs are given, in document order.
+	 */
+	public Map<String, byte[]> extractFolderData(Collection<String> folderIds, String extractionProfileFilename,
+			boolean indent) throws Exception {
+		return extractFolderData(folderIds, XsltExtractor.forProfile(extractionProfileFilename), indent);
 	}
 
-	private StreamSource getFromClasspathOrFilesystem(String extractionProfileFilename) throws Exception {
-		logger.trace("Try to get extraction profile file {} from classpath", extractionProfileFilename);
-
-		InputStream in;
-		in = this.getClass().getClassLoader().getResourceAsStream(extractionProfileFilename);
-
-		if (in != null) {
-			logger.trace("Extraction profile found on classpath");
-		} else {
-			logger.trace("Extraction profile not found on classpath. Try to load from file {}", extractionProfileFilename);
-			try {
-				in = new FileInputStream(extractionProfileFilename);
-				logger.trace("Extraction profile obtained from filesystem");
-			} catch (FileNotFoundException e) {
-				throw new Exception("Cannot obtain extraction profile. Neither is " + extractionProfileFilename +
-						" to be found on the classpath nor can the file be obtained from filesystem.");
-			}
-		}
+	/**
+	 * Extract data for several folders in a single pass over the whole EAD document.
+	 *
+	 * @param folderIds IDs of the folders to extract or <code>null</code> for all folders the extractor yields.
+	 * @param extractor Extractor to use.
+	 * @param indent    Whether to indent the extracted XML.
+	 * @return Extracted folder documents serialized as UTF-8 and mapped by folder ID, in the order of the given IDs
+	 *         or, if no IDs are given, in document order.
+	 */
+	public Map<String, byte[]> extractFolderData(Collection<String> folderIds, Extractor extractor, boolean indent)
+			throws Exception {
+		logger.info("Extract data for {} folders using {}", (folderIds == null) ? "all" : folderIds.size(), extractor);
+		return extract(folderIds, extractor, indent);
+	}
+
+	@Override
+	public void extract(Collection<String> folderIds, Extractor extractor, boolean indent, FolderHandler handler)
+			throws Exception {
+		logger.info("Extract data for {} folders using {}", (folderIds == null) ? "all" : folderIds.size(), extractor);
+		extract(new DOMSource(ead), folderIds, extractor, indent, handler);
+	}
 
-		return new StreamSource(in);
+	@Override
+	public void close() {
+		// nothing to release, the document may still be cached
 	}
 
-	private Document extract(Document ead, Source extractionProfile, String volumeId)
+	private Map<String, byte[]> extract(Collection<String> folderIds, Extractor extractor, boolean indent)
 			throws Exception {
-		DOMResult r = transform(ead, extractionProfile);
-		Document doc = filter(volumeId, r);
-		return doc;
+		return extract(new DOMSource(ead), folderIds, extractor, indent);
 	}
 
-	private DOMResult transform(Document ead, Source extractionProfile) throws TransformerException {
-		DOMResult result = new DOMResult();
-		XsltProcessor xsltproc = new XsltProcessor();
-		xsltproc.transform(new DOMSource(ead), result, extractionProfile);
-		return result;
+	/**
+	 * Extract data for several folders straight from a source, without parsing it into a DOM first. Whether the
+	 * source is read in bounded memory depends on the extractor.
+	 *
+	 * @param source    EAD document, e.g. a {@link javax.xml.transform.stream.StreamSource} of an EAD file.
+	 * @param folderIds IDs of the folders to extract or <code>null</code> for all folders the extractor yields.
+	 * @param extractor Extractor to use.
+	 * @param indent    Whether to indent the extracted XML.
+	 * @return Extracted folder documents serialized as UTF-8 and mapped by folder ID, in the order of the given IDs
+	 *         or, if no IDs are given, in document order.
+	 */
+	public static Map<String, byte[]> extract(Source source, Collection<String> folderIds, Extractor extractor,
+			boolean indent) throws Exception {
+		FolderSplitter splitter = new FolderSplitter(folderIds, indent);
+		extract(source, folderIds, extractor, splitter);
+		return splitter.getFolders(folderIds);
 	}
 
-	private Document filter(String folderId, DOMResult r) throws Exception {
-		XPathProcessor xp = new XPathProcessor();
-		xp.setQueryNode(r.getNode());
+	/**
+	 * Extract data for several folders straight from a source and pass each folder on as soon as it has been
+	 * extracted, so that the extracted folders are never held all at once.
+	 *
+	 * @param source    EAD document, e.g. a {@link javax.xml.transform.stream.StreamSource} of an EAD file.
+	 * @param folderIds IDs of the folders to extract or <code>null</code> for all folders the extractor yields.
+	 * @param extractor Extractor to use.
+	 * @param indent    Whether to indent the extracted XML.
+	 * @param handler   Receives the extracted folders in document order.
+	 */
+	public static void extract(Source source, Collection<String> folderIds, Extractor extractor, boolean indent,
+			FolderHandler handler) throws Exception {
+		extract(source, folderIds, extractor, new FolderSplitter(folderIds, indent, handler));
+	}
 
-		xp.setVariable("folder_id", folderId);
-		Node folderNode = xp.query("/bundle/folders/folder[id=$folder_id]");
-		if (folderNode == null) {
-			throw new Exception("No folder with ID " + folderId);
+	private static void extract(Source source, Collection<String> folderIds, Extractor extractor,
+			FolderSplitter splitter) throws Exception {
+		// the extracted bundle is split into folders and serialized while the extractor runs
+		Metrics.Timer timer = Metrics.getInstance().start(Metrics.TRANSFORM);
+		try {
+			extractor.extract(source, folderIds, splitter);
+		} finally {
+			timer.stop();
 		}
-		Node idNode = xp.query("/bundle/id");
-		Node titleNode = xp.query("/bundle/title");
-		Node ownerNode = xp.query("/bundle/owner");
-
-		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-		DocumentBuilder db = dbf.newDocumentBuilder();
-		Document doc = db.newDocument();
+		Metrics.getInstance().count(Metrics.FOLDERS, splitter.getFolderCount());
+	}
 
-		Element bundle = doc.createElement("bundle");
-		Element folders = doc.createElement("folders");
+	/**
+	 * Estimate the heap size retained by the parsed document from the number of its nodes and characters. The
+	 * estimate is meant for comparing documents and budgeting caches, not for exact accounting.
+	 *
+	 * @return Estimated size in bytes, or 0 if no document has been read.
+	 */
+	public long estimateSize() {
+		if (ead == null) {
+			return 0;
+		}
 
-		doc.appendChild(bundle);
-		bundle.appendChild(doc.adoptNode(idNode.cloneNode(true)));
-		bundle.appendChild(doc.adoptNode(titleNode.cloneNode(true)));
-		bundle.appendChild(doc.adoptNode(ownerNode.cloneNode(true)));
-		bundle.appendChild(folders);
-		folders.appendChild(doc.adoptNode(folderNode.cloneNode(true)));
+		long elements = 0;
+		long attributes = 0;
+		long otherNodes = 0;
+		long chars = 0;
+		Node node = ead.getDocumentElement();
+		while (node != null) {
+			if (node.getNodeType() == Node.ELEMENT_NODE) {
+				elements++;
+				NamedNodeMap atts = node.getAttributes();
+				for (int i = 0; i < atts.getLength(); i++) {
+					attributes++;
+					chars += atts.item(i).getNodeValue().length();
+				}
+			} else {
+				otherNodes++;
+				String value = node.getNodeValue();
+				if (value != null) {
+					chars += value.length();
+				}
+			}
 
-		return doc;
+			// depth-first traversal without recursion, deeply nested documents must not overflow the stack
+			if (node.getFirstChild() != null) {
+				node = node.getFirstChild();
+			} else {
+				while ((node != null) && (node.getNextSibling() == null)) {
+					node = node.getParentNode();
+					if (node == ead) {
+						node = null;
+					}
+				}
+				if (node != null) {
+					node = node.getNextSibling();
+				}
+			}
+		}
+		return elements * ELEMENT_BYTES + attributes * ATTRIBUTE_BYTES + otherNodes * NODE_BYTES + chars * CHAR_BYTES;
 	}
 
+	@Override
 	public List<String> getFolderIds() throws XPathExpressionException {
-		List<String> result = new LinkedList<String>();
+		UniqueFolderIds result = new UniqueFolderIds();
 
 		XPathProcessor xp = new XPathProcessor();
 		xp.declareNamespace("ead", "urn:isbn:1-931666-22-9");
-		NodeList nl = xp.queryList("//ead:dsc/ead:c[@level='class']/@id", ead);
+		NodeList nl = xp.queryList("//ead:dsc/ead:c[@level='class']", ead);
 
 		for (int i = 0; i < nl.getLength(); i++) {
-			result.add(nl.item(i).getNodeValue());
+			result.add(((Element) nl.item(i)).getAttribute("id"));
 		}
 
-		return result;
+		return result.getIds();
 	}
 }
@@ -0,0 +1,172 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps parsed EAD documents for reuse within a long-running JVM.
+ * <p/>
+ * Documents are kept either as DOM or as {@link ArchiveModel}, each keyed by absolute path, and reparsed if size or
+ * modification time of the file change, or if a validated document is requested but the cached one has been read
+ * without validation.
+ * <p/>
+ * The estimated size of all cached documents (see {@link EADDocument#estimateSize()} and
+ * {@link ArchiveModel#estimateSize()}) is kept within a budget. When a document is added, least recently used
+ * documents are evicted until the budget is met again. A document that exceeds the budget on its own is not cached
+ * at all.
+ */
+public class EADDocumentCache {
+
+	private Logger logger = LoggerFactory.getLogger(EADDocumentCache.class);
+	private Map<String, CacheEntry> cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+	private final long budget;
+	private long size;
+
+	/**
+	 * Create a cache with a budget of a quarter of the maximum heap size.
+	 */
+	public EADDocumentCache() {
+		this(Runtime.getRuntime().maxMemory() / 4);
+	}
+
+	/**
+	 * @param budget Maximum estimated size of all cached documents in bytes.
+	 */
+	public EADDocumentCache(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Get the parsed document for an EAD file, reading it if necessary.
+	 *
+	 * @param eadFile               EAD file.
+	 * @param validateAgainstSchema Whether the document has to be validated.
+	 * @return Parsed EAD document.
+	 */
+	public synchronized EADDocument get(File eadFile, boolean validateAgainstSchema) throws Exception {
+		return (EADDocument) get("dom", eadFile, validateAgainstSchema);
+	}
+
+	/**
+	 * Get the archive model for an EAD file, reading it if necessary.
+	 *
+	 * @param eadFile               EAD file.
+	 * @param validateAgainstSchema Whether the document has to be validated.
+	 * @return Archive model.
+	 */
+	public synchronized ArchiveModel getModel(File eadFile, boolean validateAgainstSchema) throws Exception {
+		return (ArchiveModel) get("model", eadFile, validateAgainstSchema);
+	}
+
+	private Object get(String kind, File eadFile, boolean validateAgainstSchema) throws Exception {
+		String key = kind + ":" + eadFile.getAbsolutePath();
+		CacheEntry entry = cache.get(key);
+
+		if ((entry != null) && entry.isUpToDate(eadFile) && (entry.isValidated || !validateAgainstSchema)) {
+			logger.debug("Using cached document for {}", key);
+			return entry.value;
+		}
+		if (entry != null) {
+			// release the outdated document before reading the new one
+			remove(key);
+		}
+
+		entry = new CacheEntry(eadFile, validateAgainstSchema);
+		if ("model".equals(kind)) {
+			ArchiveModel model = ArchiveModel.read(eadFile, validateAgainstSchema);
+			entry.value = model;
+			entry.size = model.estimateSize();
+		} else {
+			EADDocument document = new EADDocument();
+			document.readEadFile(eadFile, validateAgainstSchema);
+			entry.value = document;
+			entry.size = document.estimateSize();
+		}
+
+		if (entry.size > budget) {
+			logger.warn("Not caching {}: estimated size of {} bytes exceeds the cache budget of {} bytes",
+					new Object[]{key, entry.size, budget});
+			return entry.value;
+		}
+
+		Iterator<Map.Entry<String, CacheEntry>> lru = cache.entrySet().iterator();
+		while ((size + entry.size > budget) && lru.hasNext()) {
+			Map.Entry<String, CacheEntry> evicted = lru.next();
+			logger.debug("Evicting cached document for {} ({} bytes)", evicted.getKey(), evicted.getValue().size);
+			size -= evicted.getValue().size;
+			lru.remove();
+		}
+
+		cache.put(key, entry);
+		size += entry.size;
+		logger.debug("Cached document for {} ({} bytes, {} of {} bytes used)", new Object[]{key, entry.size, size, budget});
+		return entry.value;
+	}
+
+	/**
+	 * @return Estimated size of all cached documents in bytes.
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	public synchronized void clear() {
+		cache.clear();
+		size = 0;
+	}
+
+	private void remove(String key) {
+		CacheEntry entry = cache.remove(key);
+		if (entry != null) {
+			size -= entry.size;
+		}
+	}
+
+	private static class CacheEntry {
+		private final long length;
+		private final long lastModified;
+		private final boolean isValidated;
+		private Object value;
+		private long size;
+
+		private CacheEntry(File eadFile, boolean isValidated) {
+			this.length = eadFile.length();
+			this.lastModified = eadFile.lastModified();
+			this.isValidated = isValidated;
+		}
+
+		private boolean isUpToDate(File eadFile) {
+			return (eadFile.length() == length) && (eadFile.lastModified() == lastModified);
+		}
+	}
+}
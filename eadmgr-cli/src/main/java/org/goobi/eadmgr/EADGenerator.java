@@ -0,0 +1,334 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Writes synthetic EAD documents shaped like the Schlegel finding aid for load testing and benchmarks.
+ * <p/>
+ * The document has a collection <code>archdesc</code> with <code>folders</code> class level folders of
+ * <code>letters</code> item level letters each. Letters carry all data the extraction profile reads: title,
+ * creator and addressee, date, place of origin, shelf marks, folder and folio, extent, dimensions, language and
+ * accompanying material. Content is pseudo random but determined by the seed, so the same arguments always yield
+ * the same file. Output is written by a streaming writer, so files of any size can be generated in constant memory.
+ * <p/>
+ * Usage: <code>java -cp eadmgr-cli.jar org.goobi.eadmgr.EADGenerator -f 10000 -l 50 synthetic.xml</code>
+ */
+public class EADGenerator extends CliBase {
+
+	public static final String DEFAULT_FOLDERS = "100";
+	public static final String DEFAULT_LETTERS = "10";
+	public static final String DEFAULT_SEED = "1";
+	private static final String EAD_NAMESPACE = EADStreamReader.EAD_NAMESPACE;
+	private static final String XLINK_NAMESPACE = SchemaCatalog.XLINK_NAMESPACE;
+	private static final String[] PERSONS = {
+			"Goethe, Johann Wolfgang", "Schiller, Friedrich", "Tieck, Ludwig", "Schlegel, Friedrich",
+			"Schlegel, Caroline", "Humboldt, Wilhelm von", "Novalis", "Fichte, Johann Gottlieb",
+			"Schelling, Friedrich Wilhelm Joseph", "Staël, Germaine de", "Varnhagen, Rahel", "Reimer, Georg Andreas"};
+	private static final String[] PLACES = {
+			"Jena", "Weimar", "Berlin", "Bonn", "Dresden", "Coppet", "Göttingen", "Heidelberg", "Paris", "London"};
+	private static final String[] MONTHS = {
+			"Januar", "Februar", "März", "April", "Mai", "Juni", "Juli", "August", "September", "Oktober",
+			"November", "Dezember"};
+	private Options options;
+	private int folders;
+	private int letters;
+	private long seed;
+	private File outputFile;
+	private XMLStreamWriter xml;
+	private Random random;
+
+	public static void main(String[] args) {
+		System.exit(new EADGenerator().run(args));
+	}
+
+	public static String folderId(int folder) {
+		return "F" + (folder + 1);
+	}
+
+	/**
+	 * Write a synthetic EAD document.
+	 *
+	 * @param out     Stream to write the UTF-8 encoded document to. It is not closed.
+	 * @param folders Number of class level folders.
+	 * @param letters Number of item level letters per folder.
+	 * @param seed    Seed for generating content.
+	 */
+	public static void write(OutputStream out, int folders, int letters, long seed) throws XMLStreamException {
+		EADGenerator generator = new EADGenerator();
+		generator.folders = folders;
+		generator.letters = letters;
+		generator.seed = seed;
+		generator.generate(out);
+	}
+
+	@Override
+	@SuppressWarnings("AccessStaticViaInstance") // workaround for screwed OptionBuilder API
+	public void initOptions() {
+		options = new Options();
+		options.addOption("h", "help", false, "Print this usage information");
+		options.addOption(OptionBuilder
+				.withLongOpt("folders")
+				.withDescription(MessageFormat.format("Number of folders. If not given {0} is used.", DEFAULT_FOLDERS))
+				.hasArg()
+				.create("f"));
+		options.addOption(OptionBuilder
+				.withLongOpt("letters")
+				.withDescription(MessageFormat.format("Number of letters per folder. If not given {0} is used.", DEFAULT_LETTERS))
+				.hasArg()
+				.create("l"));
+		options.addOption(OptionBuilder
+				.withLongOpt("seed")
+				.withDescription(MessageFormat.format("Seed for generating content. If not given {0} is used.", DEFAULT_SEED))
+				.hasArg()
+				.create("s"));
+	}
+
+	@Override
+	public void parseArguments(String[] args) throws Exception {
+		CommandLine cmdl = new BasicParser().parse(options, args);
+		if (cmdl.hasOption('h') || (args.length == 0)) {
+			return;
+		}
+
+		folders = Integer.parseInt(cmdl.getOptionValue('f', DEFAULT_FOLDERS));
+		letters = Integer.parseInt(cmdl.getOptionValue('l', DEFAULT_LETTERS));
+		seed = Long.parseLong(cmdl.getOptionValue('s', DEFAULT_SEED));
+		if ((folders < 0) || (letters < 0)) {
+			throw new Exception("Number of folders and letters must not be negative.");
+		}
+
+		String[] leftOverArgs = cmdl.getArgs();
+		if (leftOverArgs.length != 1) {
+			throw new Exception("Exactly one output filename required.");
+		}
+		outputFile = new File(leftOverArgs[0]);
+	}
+
+	@Override
+	public int processing() throws Exception {
+		if (outputFile == null) {
+			new HelpFormatter().printHelp("EADGenerator [Options] File", options);
+			return 0;
+		}
+
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile), 64 * 1024);
+		try {
+			generate(out);
+		} finally {
+			out.close();
+		}
+		System.out.println(MessageFormat.format("Wrote {0} folders with {1} letters each to {2} ({3} bytes)",
+				folders, letters, outputFile.getPath(), String.valueOf(outputFile.length())));
+		return 0;
+	}
+
+	@Override
+	public void handleException(Exception ex) {
+		System.err.println(ex.getMessage());
+		System.err.println("Try 'EADGenerator -h' for more information.");
+	}
+
+	private void generate(OutputStream out) throws XMLStreamException {
+		random = new Random(seed);
+		xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+		xml.setDefaultNamespace(EAD_NAMESPACE);
+		xml.setPrefix("xlink", XLINK_NAMESPACE);
+
+		xml.writeStartDocument("UTF-8", "1.0");
+		newline();
+		xml.writeStartElement(EAD_NAMESPACE, "ead");
+		xml.writeDefaultNamespace(EAD_NAMESPACE);
+		xml.writeNamespace("xlink", XLINK_NAMESPACE);
+		newline();
+
+		start("eadheader");
+		element("eadid", "DE-14-Synthetic-" + seed);
+		start("filedesc");
+		start("titlestmt");
+		element("titleproper", "Synthetischer Nachlass");
+		end();
+		end();
+		end();
+		newline();
+
+		start("archdesc");
+		xml.writeAttribute("level", "collection");
+		xml.writeAttribute("id", "Mscr.Dresd.Synthetic");
+		start("did");
+		element("unittitle", "Synthetischer Nachlass mit " + folders + " Mappen");
+		start("repository");
+		start("corpname");
+		xml.writeAttribute("authfilenumber", "DE-14");
+		xml.writeAttribute("normal", "SLUB Dresden");
+		xml.writeCharacters("Sächsische Landesbibliothek - Staats- und Universitätsbibliothek Dresden");
+		end();
+		end();
+		end();
+		newline();
+
+		start("dsc");
+		newline();
+		int letterNumber = 0;
+		for (int f = 0; f < folders; f++) {
+			writeFolder(f);
+			for (int l = 0; l < letters; l++) {
+				writeLetter(f, l, ++letterNumber);
+			}
+			end();
+			newline();
+		}
+		end();
+		newline();
+		end();
+		newline();
+		end();
+		newline();
+		xml.writeEndDocument();
+		xml.flush();
+		xml.close();
+	}
+
+	private void writeFolder(int folder) throws XMLStreamException {
+		start("c");
+		xml.writeAttribute("level", "class");
+		xml.writeAttribute("id", folderId(folder));
+		start("did");
+		element("unittitle", "Briefe an Schlegel, Mappe " + (folder + 1));
+		element("unitid", "Mscr.Dresd.Synthetic,Bd." + (folder + 1));
+		end();
+		newline();
+	}
+
+	private void writeLetter(int folder, int letter, int number) throws XMLStreamException {
+		int year = 1790 + random.nextInt(55);
+		int month = random.nextInt(12);
+		int day = 1 + random.nextInt(28);
+		String creator = pick(PERSONS);
+		String addressee = pick(PERSONS);
+
+		start("c");
+		xml.writeAttribute("level", "item");
+		xml.writeAttribute("id", "L" + number);
+		start("did");
+
+		start("unittitle");
+		xml.writeCharacters("Brief von ");
+		person("creator", creator);
+		xml.writeCharacters(" an ");
+		person("addressee", addressee);
+		xml.writeCharacters(" ");
+		start("unitdate");
+		xml.writeAttribute("normal", String.format(Locale.ROOT, "%04d-%02d-%02d", year, month + 1, day));
+		xml.writeCharacters(day + ". " + MONTHS[month] + " " + year);
+		end();
+		xml.writeCharacters(" ");
+		start("geogname");
+		xml.writeAttribute("role", "origin");
+		xml.writeCharacters(pick(PLACES));
+		end();
+		end();
+
+		start("unitid");
+		xml.writeAttribute("type", "shelfMark");
+		xml.writeCharacters("Mscr.Dresd.Synthetic,Bd." + (folder + 1) + ",Nr." + (letter + 1));
+		end();
+		start("unitid");
+		xml.writeAttribute("type", "furtherShelfMark");
+		xml.writeCharacters("alt " + number);
+		end();
+		start("container");
+		xml.writeAttribute("type", "folder");
+		xml.writeCharacters(String.valueOf(folder + 1));
+		end();
+		start("container");
+		xml.writeAttribute("type", "folio");
+		xml.writeCharacters((2 * letter + 1) + "-" + (2 * letter + 2));
+		end();
+		start("physdesc");
+		element("extent", (1 + random.nextInt(8)) + " Bl.");
+		element("dimensions", (15 + random.nextInt(10)) + " x " + (20 + random.nextInt(15)) + " cm");
+		end();
+		start("langmaterial");
+		start("language");
+		xml.writeAttribute("langcode", random.nextInt(4) == 0 ? "fre" : "ger");
+		end();
+		end();
+		end();
+
+		if (random.nextInt(3) == 0) {
+			start("odd");
+			xml.writeAttribute("type", "accompanyingMaterial");
+			element("p", "Umschlag mit Adresse");
+			end();
+		}
+		end();
+		newline();
+	}
+
+	private void person(String role, String name) throws XMLStreamException {
+		start("persname");
+		xml.writeAttribute("role", role);
+		xml.writeAttribute("authfilenumber", String.valueOf(118000000 + Math.abs(name.hashCode() % 1000000)));
+		xml.writeAttribute("normal", name);
+		xml.writeCharacters(name.split(",")[0]);
+		end();
+	}
+
+	private String pick(String[] values) {
+		return values[random.nextInt(values.length)];
+	}
+
+	private void start(String name) throws XMLStreamException {
+		xml.writeStartElement(EAD_NAMESPACE, name);
+	}
+
+	private void end() throws XMLStreamException {
+		xml.writeEndElement();
+	}
+
+	private void element(String name, String text) throws XMLStreamException {
+		start(name);
+		xml.writeCharacters(text);
+		end();
+	}
+
+	private void newline() throws XMLStreamException {
+		xml.writeCharacters("\n");
+	}
+}
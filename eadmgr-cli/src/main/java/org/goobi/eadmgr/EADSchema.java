@@ -25,20 +25,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.XMLConstants;
-import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
 import javax.xml.validation.ValidatorHandler;
-import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
 
+/**
+ * The compiled EAD schema.
+ * <p/>
+ * Compiling the schema is expensive, so it is done once per JVM and the immutable result is shared by all
+ * validations. Imported schemas are resolved to local copies by {@link SchemaCatalog}, no network access is needed.
+ */
 public class EADSchema extends Schema {
 
 	public static final String EAD_200804_XSD = "ead-200804.xsd";
-	public static final String HTTP_WWW_LOC_GOV_EAD_EAD_XSDL = "http://www.loc.gov/ead/ead.xsd";
 	private static EADSchema instance;
 	private static Logger logger = LoggerFactory.getLogger(EADSchema.class);
 	private Schema schema;
@@ -47,34 +49,29 @@ public class EADSchema extends Schema {
 		this.schema = schema;
 	}
 
-	public static EADSchema getInstance() throws Exception {
+	public static synchronized EADSchema getInstance() throws Exception {
 		if (instance == null) {
-			instance = getFromClasspathOrDownload();
+			instance = getFromClasspath();
 		}
 		return instance;
 	}
 
-	private static EADSchema getFromClasspathOrDownload() throws Exception {
+	private static EADSchema getFromClasspath() throws Exception {
 		logger.trace("Try to get EAD schema file {} from classpath", EAD_200804_XSD);
 
-		Source src;
-		InputStream is = EADSchema.class.getClassLoader().getResourceAsStream(EAD_200804_XSD);
-		if (is != null) {
-			logger.trace("EAD schema file found on classpath");
-			src = new StreamSource(is);
-		} else {
-			logger.trace("EAD schema file not found on classpath. Try to download from URL {}", HTTP_WWW_LOC_GOV_EAD_EAD_XSDL);
-			try {
-				src = new StreamSource(new URL(HTTP_WWW_LOC_GOV_EAD_EAD_XSDL).openStream());
-				logger.trace("EAD schema obtained by URL");
-			} catch (IOException e) {
-				throw new Exception("Cannot obtain schema for validation. Neither is the file " + EAD_200804_XSD +
-						" to be found on the classpath nor can the schema be obtained from " + HTTP_WWW_LOC_GOV_EAD_EAD_XSDL + ".");
-			}
+		URL url = EADSchema.class.getClassLoader().getResource(EAD_200804_XSD);
+		if (url == null) {
+			throw new Exception("Cannot obtain schema for validation. The file " + EAD_200804_XSD + " cannot be found on the classpath.");
 		}
 
-		SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-		return new EADSchema(sf.newSchema(src));
+		Metrics.Timer timer = Metrics.getInstance().start(Metrics.SCHEMA_LOAD);
+		try {
+			SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+			sf.setResourceResolver(new SchemaCatalog());
+			return new EADSchema(sf.newSchema(new StreamSource(url.toExternalForm())));
+		} finally {
+			timer.stop();
+		}
 	}
 
 	@Override
@@ -0,0 +1,349 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads an EAD file folder by folder instead of building a DOM for the whole document.
+ * <p/>
+ * Every <code>ead:dsc/ead:c</code> element is visited in document order. Its subtree can either be skipped or read
+ * into a small fragment document with the structure <code>ead/archdesc/(did, dsc/c)</code>. The fragment carries the
+ * attributes of <code>archdesc</code> and its <code>did</code> header, so that extraction profiles can be run on it
+ * just like on the complete document. Memory usage depends on the size of a single folder, not of the whole file.
+ * <p/>
+ * Usage:
+ * <pre>
+ * EADStreamReader reader = new EADStreamReader(eadFile);
+ * try {
+ *     while (reader.nextFolder()) {
+ *         if (isWanted(reader.getFolderId())) {
+ *             Document fragment = reader.readFolder();
+ *         }
+ *     }
+ * } finally {
+ *     reader.close();
+ * }
+ * </pre>
+ */
+public class EADStreamReader implements FolderReader {
+
+	public static final String EAD_NAMESPACE = "urn:isbn:1-931666-22-9";
+	public static final String FOLDER_LEVEL = "class";
+
+	private Logger logger = LoggerFactory.getLogger(EADStreamReader.class);
+	private File eadFile;
+	private InputStream in;
+	private XMLStreamReader xml;
+	private LinkedList<String> path = new LinkedList<String>();
+	private Document header;
+	private Element rootElement;
+	private Element archdescElement;
+	private Element didElement;
+	private Element dscElement;
+	private boolean isOnFolder;
+	private String folderId;
+	private String folderLevel;
+
+	public EADStreamReader(File eadFile) throws Exception {
+		this.eadFile = eadFile;
+		this.header = newDocument();
+
+		XMLInputFactory xif = XMLInputFactory.newInstance();
+		xif.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+		xif.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+		this.in = new BufferedInputStream(new FileInputStream(eadFile));
+		this.xml = xif.createXMLStreamReader(in);
+	}
+
+	/**
+	 * Advance to the next <code>ead:dsc/ead:c</code> element. The subtree of the current folder is skipped if it
+	 * hasn't been read by {@link #readFolder()}.
+	 *
+	 * @return <code>true</code> if positioned on the next folder, <code>false</code> if the end of the document has
+	 *         been reached.
+	 */
+	public boolean nextFolder() throws XMLStreamException {
+		if (isOnFolder) {
+			skipElement();
+		}
+
+		while (xml.hasNext()) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				if (isElement("c") && isParent("dsc")) {
+					isOnFolder = true;
+					folderId = getAttribute("id");
+					folderLevel = getAttribute("level");
+					return true;
+				} else if (isElement("did") && isParent("archdesc")) {
+					didElement = buildElement(header, null);
+				} else {
+					enterElement();
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				path.removeLast();
+			}
+		}
+
+		isOnFolder = false;
+		folderId = null;
+		folderLevel = null;
+		return false;
+	}
+
+	/**
+	 * @return Value of the <code>id</code> attribute of the current folder.
+	 */
+	public String getFolderId() {
+		return folderId;
+	}
+
+	/**
+	 * @return Value of the <code>level</code> attribute of the current folder.
+	 */
+	public String getFolderLevel() {
+		return folderLevel;
+	}
+
+	/**
+	 * @return <code>true</code> if the current folder is on level <code>class</code>.
+	 */
+	public boolean isClassFolder() {
+		return FOLDER_LEVEL.equals(folderLevel);
+	}
+
+	/**
+	 * Read the subtree of the current folder into a fragment document.
+	 *
+	 * @return Document with the structure <code>ead/archdesc/(did, dsc/c)</code> holding just the current folder.
+	 */
+	public Document readFolder() throws Exception {
+		Metrics.Timer timer = Metrics.getInstance().start(Metrics.PARSE);
+		try {
+			if (!isOnFolder) {
+				throw new IllegalStateException("Not positioned on a folder. Call nextFolder() first.");
+			}
+
+			Document fragment = newDocument();
+			Element ead = (Element) fragment.importNode(rootElement, false);
+			Element archdesc = (Element) fragment.importNode(archdescElement, false);
+			Element dsc = (Element) fragment.importNode(dscElement, false);
+
+			fragment.appendChild(ead);
+			ead.appendChild(archdesc);
+			if (didElement != null) {
+				archdesc.appendChild(fragment.importNode(didElement, true));
+			}
+			archdesc.appendChild(dsc);
+			buildElement(fragment, dsc);
+
+			isOnFolder = false;
+			return fragment;
+		} finally {
+			timer.stop();
+		}
+	}
+
+	/**
+	 * Collect the IDs of all folders on level <code>class</code> without building any DOM.
+	 *
+	 * @return Folder IDs in document order.
+	 */
+	@Override
+	public List<String> getFolderIds() throws XMLStreamException {
+		UniqueFolderIds result = new UniqueFolderIds();
+		while (nextFolder()) {
+			if (isClassFolder()) {
+				result.add(folderId);
+			}
+		}
+		return result.getIds();
+	}
+
+	/**
+	 * Extract the remaining folders of the file. Every folder is read into its own fragment document and extracted
+	 * on its own.
+	 */
+	@Override
+	public void extract(Collection<String> folderIds, Extractor extractor, boolean indent, FolderHandler handler)
+			throws Exception {
+		Set<String> pending = (folderIds == null) ? null : new HashSet<String>(folderIds);
+		UniqueFolderIds done = new UniqueFolderIds();
+		while (nextFolder()) {
+			String id = folderId;
+			if (isClassFolder() && ((pending == null) || pending.remove(id)) && done.add(id)) {
+				handler.folder(id, new EADDocument(readFolder()).extractFolderData(id, extractor, indent));
+				if ((pending != null) && pending.isEmpty()) {
+					break;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void close() throws Exception {
+		xml.close();
+		in.close();
+	}
+
+	private Document newDocument() throws ParserConfigurationException {
+		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		dbf.setNamespaceAware(true);
+		return dbf.newDocumentBuilder().newDocument();
+	}
+
+	private boolean isElement(String localName) {
+		return localName.equals(xml.getLocalName()) && EAD_NAMESPACE.equals(xml.getNamespaceURI());
+	}
+
+	private boolean isParent(String localName) {
+		return !path.isEmpty() && localName.equals(path.getLast());
+	}
+
+	private void enterElement() {
+		String localName = EAD_NAMESPACE.equals(xml.getNamespaceURI()) ? xml.getLocalName() : "";
+
+		// keep the ancestors of the folders for building fragment documents
+		if (path.isEmpty()) {
+			rootElement = createElement(header);
+		} else if ("archdesc".equals(localName)) {
+			archdescElement = createElement(header);
+			didElement = null;
+		} else if ("dsc".equals(localName) && "archdesc".equals(path.getLast())) {
+			dscElement = createElement(header);
+		}
+
+		path.addLast(localName);
+	}
+
+	private void skipElement() throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+		isOnFolder = false;
+	}
+
+	/**
+	 * Build a DOM subtree from the current start element up to its matching end element.
+	 */
+	private Element buildElement(Document doc, Node parent) throws XMLStreamException {
+		Element top = createElement(doc);
+		if (parent != null) {
+			parent.appendChild(top);
+		}
+
+		Node current = top;
+		while (current != null) {
+			switch (xml.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					Element e = createElement(doc);
+					current.appendChild(e);
+					current = e;
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					current = (current == top) ? null : current.getParentNode();
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					Node last = current.getLastChild();
+					if (last instanceof Text) {
+						((Text) last).appendData(xml.getText());
+					} else {
+						current.appendChild(doc.createTextNode(xml.getText()));
+					}
+					break;
+				case XMLStreamConstants.COMMENT:
+					// kept like the parsed document does, a comment ends the text node before it
+					current.appendChild(doc.createComment(xml.getText()));
+					break;
+				case XMLStreamConstants.PROCESSING_INSTRUCTION:
+					current.appendChild(doc.createProcessingInstruction(xml.getPITarget(), xml.getPIData()));
+					break;
+			}
+		}
+		return top;
+	}
+
+	private Element createElement(Document doc) {
+		Element e = doc.createElementNS(namespaceUri(xml.getNamespaceURI()),
+				qualifiedName(xml.getPrefix(), xml.getLocalName()));
+		for (int i = 0; i < xml.getAttributeCount(); i++) {
+			e.setAttributeNS(namespaceUri(xml.getAttributeNamespace(i)),
+					qualifiedName(xml.getAttributePrefix(i), xml.getAttributeLocalName(i)),
+					xml.getAttributeValue(i));
+		}
+		return e;
+	}
+
+	/**
+	 * @return Value of the attribute of the current element with the given name and no namespace, or
+	 *         <code>null</code>. Unlike {@link XMLStreamReader#getAttributeValue(String, String)} with a
+	 *         <code>null</code> namespace, attributes in other namespaces are never matched.
+	 */
+	private String getAttribute(String localName) {
+		for (int i = 0; i < xml.getAttributeCount(); i++) {
+			if (localName.equals(xml.getAttributeLocalName(i))
+					&& (namespaceUri(xml.getAttributeNamespace(i)) == null)) {
+				return xml.getAttributeValue(i);
+			}
+		}
+		return null;
+	}
+
+	private String namespaceUri(String uri) {
+		return (uri == null || uri.isEmpty()) ? null : uri;
+	}
+
+	private String qualifiedName(String prefix, String localName) {
+		return (prefix == null || prefix.isEmpty()) ? localName : prefix + ":" + localName;
+	}
+}
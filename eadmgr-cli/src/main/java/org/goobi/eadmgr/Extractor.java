@@ -0,0 +1,46 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.xml.sax.ContentHandler;
+
+import javax.xml.transform.Source;
+import java.util.Collection;
+
+/**
+ * Extracts folder data from an EAD document.
+ * <p/>
+ * An extractor sends a <code>bundle</code> document with the folders of the EAD document to a SAX handler, usually a
+ * {@link FolderSplitter}. The structure is the one of the extraction profiles: <code>id</code>, <code>title</code>
+ * and <code>owner</code> of the bundle followed by <code>folders/folder</code>. Implementations have to be thread
+ * safe.
+ */
+public interface Extractor {
+
+	/**
+	 * @param source    EAD document.
+	 * @param folderIds IDs of the wanted folders or <code>null</code> for all folders. Extractors may use this to
+	 *                  skip other folders, but are not required to.
+	 * @param handler   Receives the bundle document.
+	 */
+	void extract(Source source, Collection<String> folderIds, ContentHandler handler) throws Exception;
+}
@@ -0,0 +1,346 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the folders of an EAD file, optionally stored in a sidecar file next to it.
+ * <p/>
+ * The index maps the IDs of all <code>ead:dsc/ead:c[@level='class']</code> folders to their titles and to the byte
+ * offsets of their elements in the EAD file. It also records the offsets of the ancestors of the folders and of the
+ * <code>archdesc/did</code> header, so that a fragment holding just some folders can be read by seeking straight to
+ * their subtrees, see {@link #readFragment(File, List)}.
+ * <p/>
+ * The sidecar file is only created on request, see {@link #forFile(File, boolean)}. It is bound to the size and
+ * modification time of the EAD file and gets rebuilt if either changes.
+ */
+public class FolderIndex {
+
+	public static final String INDEX_FILE_SUFFIX = ".eadmgr-index";
+	private static final String FORMAT = "# eadmgr folder index 2";
+	private static Logger logger = LoggerFactory.getLogger(FolderIndex.class);
+
+	private long sourceLength;
+	private long sourceLastModified;
+	private String rootName;
+	private long prologEnd = -1;
+	private String archdescName;
+	private long archdescStart = -1;
+	private long archdescEnd = -1;
+	private long didStart = -1;
+	private long didEnd = -1;
+	private String dscName;
+	private long dscStart = -1;
+	private long dscEnd = -1;
+	private List<Entry> folders = new ArrayList<Entry>();
+	private Map<String, Entry> foldersById = new HashMap<String, Entry>();
+
+	FolderIndex(long sourceLength, long sourceLastModified) {
+		this.sourceLength = sourceLength;
+		this.sourceLastModified = sourceLastModified;
+	}
+
+	/**
+	 * Get the folder index of an EAD file. An up-to-date sidecar index file is used if present. Otherwise the
+	 * EAD file is scanned. The index is written to the sidecar file, if possible, when asked to or when it replaces
+	 * an outdated sidecar file.
+	 *
+	 * @param eadFile EAD file.
+	 * @param isKeep  Whether to create a sidecar file if there is none.
+	 * @return Index of the given file.
+	 */
+	public static FolderIndex forFile(File eadFile, boolean isKeep) throws Exception {
+		Metrics.Timer timer = Metrics.getInstance().start(Metrics.INDEX);
+		try {
+			File indexFile = getIndexFile(eadFile);
+
+			if (indexFile.isFile()) {
+				FolderIndex index = read(indexFile);
+				if ((index != null) && index.isUpToDate(eadFile)) {
+					logger.trace("Using folder index {}", indexFile);
+					return index;
+				}
+				logger.debug("Folder index {} is outdated", indexFile);
+			}
+
+			logger.debug("Building folder index for {}", eadFile);
+			FolderIndex index = new FolderIndexBuilder().build(eadFile);
+			if (isKeep || indexFile.isFile()) {
+				try {
+					index.write(indexFile);
+				} catch (IOException e) {
+					logger.warn("Cannot write folder index {}: {}", indexFile, e.getMessage());
+				}
+			}
+			return index;
+		} finally {
+			timer.stop();
+		}
+	}
+
+	public static File getIndexFile(File eadFile) {
+		return new File(eadFile.getAbsoluteFile().getParentFile(), eadFile.getName() + INDEX_FILE_SUFFIX);
+	}
+
+	private static FolderIndex read(File indexFile) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+		try {
+			if (!FORMAT.equals(reader.readLine())) {
+				return null;
+			}
+
+			FolderIndex index = null;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] f = line.split("\t", -1);
+				if ("source".equals(f[0])) {
+					index = new FolderIndex(Long.parseLong(f[1]), Long.parseLong(f[2]));
+				} else if (index == null) {
+					return null;
+				} else if ("root".equals(f[0])) {
+					index.setRoot(f[1], Long.parseLong(f[2]));
+				} else if ("archdesc".equals(f[0])) {
+					index.setArchdesc(f[1], Long.parseLong(f[2]), Long.parseLong(f[3]));
+				} else if ("did".equals(f[0])) {
+					index.setDid(Long.parseLong(f[1]), Long.parseLong(f[2]));
+				} else if ("dsc".equals(f[0])) {
+					index.setDsc(f[1], Long.parseLong(f[2]), Long.parseLong(f[3]));
+				} else if ("folder".equals(f[0])) {
+					index.addFolder(new Entry(f[3], f[4].isEmpty() ? null : f[4], Long.parseLong(f[1]), Long.parseLong(f[2])));
+				}
+			}
+			return index;
+		} catch (RuntimeException e) {
+			logger.debug("Cannot read folder index {}: {}", indexFile, e.getMessage());
+			return null;
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void write(File indexFile) throws IOException {
+		// write to a temporary file first so that concurrent readers never see a partial index
+		File tmp = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+		PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+		try {
+			pw.print(FORMAT + "\n");
+			pw.print("source\t" + sourceLength + "\t" + sourceLastModified + "\n");
+			pw.print("root\t" + rootName + "\t" + prologEnd + "\n");
+			if (archdescName != null) {
+				pw.print("archdesc\t" + archdescName + "\t" + archdescStart + "\t" + archdescEnd + "\n");
+			}
+			if (didStart >= 0) {
+				pw.print("did\t" + didStart + "\t" + didEnd + "\n");
+			}
+			if (dscName != null) {
+				pw.print("dsc\t" + dscName + "\t" + dscStart + "\t" + dscEnd + "\n");
+			}
+			for (Entry e : folders) {
+				pw.print("folder\t" + e.getStart() + "\t" + e.getEnd() + "\t" + e.getId() + "\t"
+						+ ((e.getTitle() == null) ? "" : e.getTitle()) + "\n");
+			}
+		} finally {
+			pw.close();
+		}
+		if (pw.checkError()) {
+			tmp.delete();
+			throw new IOException("Error writing " + tmp);
+		}
+		if (!tmp.renameTo(indexFile)) {
+			indexFile.delete();
+			if (!tmp.renameTo(indexFile)) {
+				tmp.delete();
+				throw new IOException("Cannot rename " + tmp + " to " + indexFile);
+			}
+		}
+	}
+
+	/**
+	 * Assemble a well-formed fragment of the EAD file holding the given folders. The fragment consists of the prolog
+	 * and the start tag of the root element, the <code>archdesc</code> start tag, the <code>archdesc/did</code>
+	 * header, the <code>dsc</code> start tag and the folders, followed by the matching end tags. All parts are copied
+	 * byte by byte, so namespace declarations, encoding and entity declarations of the original file apply.
+	 *
+	 * @param eadFile EAD file this index belongs to.
+	 * @param entries Folders to include, in the order given.
+	 * @return Bytes of the fragment document.
+	 */
+	public byte[] readFragment(File eadFile, List<Entry> entries) throws IOException {
+		if ((archdescName == null) || (dscName == null)) {
+			throw new IOException("No archdesc/dsc structure indexed for " + eadFile);
+		}
+		if (!isUpToDate(eadFile)) {
+			throw new IOException("Folder index is outdated for " + eadFile);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RandomAccessFile raf = new RandomAccessFile(eadFile, "r");
+		try {
+			copy(raf, 0, prologEnd, out);
+			copy(raf, archdescStart, archdescEnd, out);
+			if (didStart >= 0) {
+				copy(raf, didStart, didEnd, out);
+			}
+			copy(raf, dscStart, dscEnd, out);
+			for (Entry entry : entries) {
+				copy(raf, entry.getStart(), entry.getEnd(), out);
+			}
+		} finally {
+			raf.close();
+		}
+		out.write(("</" + dscName + "></" + archdescName + "></" + rootName + ">").getBytes("US-ASCII"));
+		return out.toByteArray();
+	}
+
+	private void copy(RandomAccessFile raf, long start, long end, ByteArrayOutputStream out) throws IOException {
+		byte[] bytes = new byte[(int) (end - start)];
+		raf.seek(start);
+		raf.readFully(bytes);
+		out.write(bytes);
+	}
+
+	public boolean isUpToDate(File eadFile) {
+		return (eadFile.length() == sourceLength) && (eadFile.lastModified() == sourceLastModified);
+	}
+
+	/**
+	 * @return IDs of all folders on level <code>class</code> in document order.
+	 */
+	public List<String> getFolderIds() {
+		UniqueFolderIds result = new UniqueFolderIds();
+		for (Entry e : folders) {
+			result.add(e.getId());
+		}
+		return result.getIds();
+	}
+
+	/**
+	 * @return All folders in document order.
+	 */
+	public List<Entry> getFolders() {
+		return Collections.unmodifiableList(folders);
+	}
+
+	/**
+	 * @param folderId Folder ID.
+	 * @return Index entry for the folder or <code>null</code> if there is no folder with this ID.
+	 */
+	public Entry getFolder(String folderId) {
+		return foldersById.get(folderId);
+	}
+
+	long getDidStart() {
+		return didStart;
+	}
+
+	long getDidEnd() {
+		return didEnd;
+	}
+
+	long getDscStart() {
+		return dscStart;
+	}
+
+	void setRoot(String name, long prologEnd) {
+		this.rootName = name;
+		this.prologEnd = prologEnd;
+	}
+
+	void setArchdesc(String name, long start, long end) {
+		this.archdescName = name;
+		this.archdescStart = start;
+		this.archdescEnd = end;
+	}
+
+	void setDid(long start, long end) {
+		this.didStart = start;
+		this.didEnd = end;
+	}
+
+	void setDidEnd(long end) {
+		this.didEnd = end;
+	}
+
+	void setDsc(String name, long start, long end) {
+		this.dscName = name;
+		this.dscStart = start;
+		this.dscEnd = end;
+	}
+
+	void addFolder(Entry entry) {
+		folders.add(entry);
+		if (!entry.getId().isEmpty() && !foldersById.containsKey(entry.getId())) {
+			foldersById.put(entry.getId(), entry);
+		}
+	}
+
+	/**
+	 * Index entry of a single folder. Offsets span the complete <code>c</code> element including start and end tag.
+	 */
+	public static class Entry {
+		private final String id;
+		private final String title;
+		private final long start;
+		private final long end;
+
+		Entry(String id, String title, long start, long end) {
+			this.id = id;
+			this.title = title;
+			this.start = start;
+			this.end = end;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getTitle() {
+			return title;
+		}
+
+		public long getStart() {
+			return start;
+		}
+
+		public long getEnd() {
+			return end;
+		}
+	}
+}
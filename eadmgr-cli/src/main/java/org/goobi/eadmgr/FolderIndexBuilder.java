@@ -0,0 +1,406 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Scans the bytes of an EAD file to build a {@link FolderIndex}.
+ * <p/>
+ * This is not a full XML parser. It only tokenizes markup far enough to record byte offsets of the elements needed
+ * for folder extraction. Well-formedness is therefore checked by a SAX parse before the file is scanned. Elements
+ * are matched by local name in the EAD namespace, resolving the namespace declarations in scope. Only ASCII
+ * compatible encodings like UTF-8 or ISO-8859-1 are supported.
+ */
+class FolderIndexBuilder {
+
+	private static final Pattern ENCODING_PATTERN = Pattern.compile("encoding\\s*=\\s*[\"']([^\"']+)[\"']");
+	private static final Pattern ENTITY_PATTERN = Pattern.compile("&(#x?)?([0-9a-zA-Z]+);");
+
+	private InputStream in;
+	private byte[] buffer = new byte[64 * 1024];
+	private int pos;
+	private int limit;
+	private long bufferOffset;
+	private String encoding = "UTF-8";
+	// local names of the open elements, null for elements outside of the EAD namespace
+	private List<String> path = new ArrayList<String>();
+	// namespace declarations of the open elements, null for elements without declarations
+	private List<Map<String, String>> namespaces = new ArrayList<Map<String, String>>();
+	private FolderIndex index;
+
+	// folder currently scanned
+	private long folderStart = -1;
+	private int folderDepth;
+	private String folderId;
+	private String folderLevel;
+	private int folderDidDepth;
+	private boolean isInFolderDid;
+	private String folderTitle;
+
+	// title text currently captured
+	private int captureDepth = -1;
+	private ByteArrayOutputStream text = new ByteArrayOutputStream();
+	private StringBuilder capture = new StringBuilder();
+
+	public FolderIndex build(File eadFile) throws Exception {
+		checkWellFormed(eadFile);
+
+		index = new FolderIndex(eadFile.length(), eadFile.lastModified());
+		in = new BufferedInputStream(new FileInputStream(eadFile));
+		try {
+			checkByteOrderMark();
+			scan();
+		} finally {
+			in.close();
+		}
+		return index;
+	}
+
+	private void checkWellFormed(File eadFile) throws Exception {
+		SAXParserFactory spf = SAXParserFactory.newInstance();
+		spf.setNamespaceAware(true);
+		XMLReader reader = spf.newSAXParser().getXMLReader();
+		reader.setErrorHandler(new StrictErrorHandler());
+		reader.parse(eadFile.toURI().toString());
+	}
+
+	private void checkByteOrderMark() throws IOException {
+		fill();
+		if ((limit >= 2) && (((buffer[0] & 0xff) == 0xfe && (buffer[1] & 0xff) == 0xff) ||
+				((buffer[0] & 0xff) == 0xff && (buffer[1] & 0xff) == 0xfe))) {
+			throw new IOException("Cannot index UTF-16 encoded files.");
+		}
+	}
+
+	private void scan() throws IOException {
+		int b;
+		while ((b = read()) != -1) {
+			if (b == '<') {
+				flushText();
+				markup(position() - 1);
+			} else if (captureDepth >= 0) {
+				text.write(b);
+			}
+		}
+	}
+
+	private void markup(long start) throws IOException {
+		int b = read();
+		if (b == '?') {
+			String pi = readUntil("?>");
+			if (start == 0) {
+				Matcher m = ENCODING_PATTERN.matcher(pi);
+				if (m.find()) {
+					encoding = m.group(1);
+				}
+			}
+		} else if (b == '!') {
+			b = read();
+			if (b == '-') {
+				readUntil("-->");
+			} else if (b == '[') {
+				// <![CDATA[ ... ]]>
+				String cdata = readUntil("]]>");
+				if (captureDepth >= 0) {
+					capture.append(cdata.substring("CDATA[".length()));
+				}
+			} else {
+				skipDoctype();
+			}
+		} else if (b == '/') {
+			readUntil(">");
+			endTagAt(position());
+		} else {
+			startTag(start, (char) b);
+		}
+	}
+
+	private void startTag(long start, char first) throws IOException {
+		StringBuilder name = new StringBuilder().append(first);
+		String id = null;
+		String level = null;
+		Map<String, String> declarations = null;
+		boolean isEmpty = false;
+
+		int b = read();
+		while (b != -1 && !isWhitespace(b) && b != '/' && b != '>') {
+			name.append((char) b);
+			b = read();
+		}
+
+		// attributes
+		while (b != '>') {
+			checkEndOfFile(b, start);
+			if (b == '/') {
+				isEmpty = true;
+			} else if (!isWhitespace(b)) {
+				StringBuilder attrName = new StringBuilder();
+				while (b != '=' && !isWhitespace(b)) {
+					checkEndOfFile(b, start);
+					attrName.append((char) b);
+					b = read();
+				}
+				while (b != '"' && b != '\'') {
+					checkEndOfFile(b, start);
+					b = read();
+				}
+				String attr = attrName.toString();
+				String value = decode(readUntil(String.valueOf((char) b)));
+				if ("id".equals(attr)) {
+					id = value;
+				} else if ("level".equals(attr)) {
+					level = value;
+				} else if ("xmlns".equals(attr) || attr.startsWith("xmlns:")) {
+					if (declarations == null) {
+						declarations = new HashMap<String, String>();
+					}
+					declarations.put(attr.equals("xmlns") ? "" : attr.substring("xmlns:".length()), value);
+				}
+			}
+			b = read();
+		}
+
+		long end = position();
+		String qname = name.toString();
+		namespaces.add(declarations);
+		String localName = EADStreamReader.EAD_NAMESPACE.equals(namespaceUri(qname)) ? localName(qname) : null;
+		String parent = path.isEmpty() ? null : path.get(path.size() - 1);
+
+		if (path.isEmpty()) {
+			index.setRoot(qname, end);
+		} else if (localName == null) {
+			// not an EAD element
+		} else if ("archdesc".equals(localName)) {
+			index.setArchdesc(qname, start, end);
+		} else if ("did".equals(localName) && "archdesc".equals(parent) && index.getDidStart() < 0) {
+			index.setDid(start, isEmpty ? end : -1);
+		} else if ("dsc".equals(localName) && "archdesc".equals(parent) && index.getDscStart() < 0) {
+			index.setDsc(qname, start, end);
+		} else if ("c".equals(localName) && "dsc".equals(parent)) {
+			folderStart = start;
+			folderDepth = path.size();
+			folderId = id;
+			folderLevel = level;
+			folderDidDepth = -1;
+			folderTitle = null;
+		} else if (folderStart >= 0) {
+			// the folder title is the first unittitle of the first did of the folder
+			if ("did".equals(localName) && path.size() == folderDepth + 1 && folderDidDepth < 0) {
+				folderDidDepth = path.size();
+				isInFolderDid = true;
+			} else if ("unittitle".equals(localName) && isInFolderDid && path.size() == folderDidDepth + 1
+					&& folderTitle == null && captureDepth < 0) {
+				captureDepth = path.size();
+			}
+		}
+
+		path.add(localName);
+		if (isEmpty) {
+			endTagAt(end);
+		}
+	}
+
+	private void checkEndOfFile(int b, long start) throws IOException {
+		if (b == -1) {
+			throw new IOException("Unexpected end of file in start tag at offset " + start);
+		}
+	}
+
+	/**
+	 * @return Namespace URI of an element name from the declarations in scope, or <code>null</code> if the name
+	 *         has no namespace.
+	 */
+	private String namespaceUri(String qname) {
+		int colon = qname.indexOf(':');
+		String prefix = (colon < 0) ? "" : qname.substring(0, colon);
+		for (int i = namespaces.size() - 1; i >= 0; i--) {
+			Map<String, String> declarations = namespaces.get(i);
+			if ((declarations != null) && declarations.containsKey(prefix)) {
+				String uri = declarations.get(prefix);
+				return uri.isEmpty() ? null : uri;
+			}
+		}
+		return null;
+	}
+
+	private void endTagAt(long end) throws IOException {
+		String localName = path.remove(path.size() - 1);
+		namespaces.remove(namespaces.size() - 1);
+		int depth = path.size();
+
+		if (depth == folderDidDepth) {
+			isInFolderDid = false;
+		}
+
+		if (depth == captureDepth) {
+			flushText();
+			folderTitle = capture.toString().trim().replaceAll("\\s+", " ");
+			capture.setLength(0);
+			captureDepth = -1;
+		}
+
+		if ((folderStart >= 0) && (depth == folderDepth)) {
+			if (EADStreamReader.FOLDER_LEVEL.equals(folderLevel)) {
+				// folders without ID are indexed too, so that every reader of the index skips them the same way
+				index.addFolder(new FolderIndex.Entry((folderId == null) ? "" : folderId, folderTitle, folderStart,
+						end));
+			}
+			folderStart = -1;
+		} else if ("did".equals(localName) && index.getDidStart() >= 0 && index.getDidEnd() < 0
+				&& depth > 0 && "archdesc".equals(path.get(depth - 1))) {
+			index.setDidEnd(end);
+		}
+	}
+
+	private void flushText() throws IOException {
+		if (text.size() > 0) {
+			if (captureDepth >= 0) {
+				capture.append(decode(text.toString(encoding)));
+			}
+			text.reset();
+		}
+	}
+
+	private void skipDoctype() throws IOException {
+		int brackets = 0;
+		int quote = 0;
+		int b;
+		while ((b = read()) != -1) {
+			if (quote != 0) {
+				if (b == quote) {
+					quote = 0;
+				}
+			} else if (b == '"' || b == '\'') {
+				quote = b;
+			} else if (b == '[') {
+				brackets++;
+			} else if (b == ']') {
+				brackets--;
+			} else if (b == '>' && brackets == 0) {
+				return;
+			}
+		}
+	}
+
+	private String readUntil(String terminator) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte last = (byte) terminator.charAt(terminator.length() - 1);
+		int b;
+		while ((b = read()) != -1) {
+			bytes.write(b);
+			if (b == last && endsWith(bytes, terminator)) {
+				String s = bytes.toString(encoding);
+				return s.substring(0, s.length() - terminator.length());
+			}
+		}
+		throw new IOException("Unexpected end of file, expected " + terminator);
+	}
+
+	private boolean endsWith(ByteArrayOutputStream bytes, String terminator) {
+		if (bytes.size() < terminator.length()) {
+			return false;
+		}
+		byte[] b = bytes.toByteArray();
+		for (int i = 0; i < terminator.length(); i++) {
+			if (b[b.length - terminator.length() + i] != terminator.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private String decode(String s) {
+		if (s.indexOf('&') < 0) {
+			return s;
+		}
+		Matcher m = ENTITY_PATTERN.matcher(s);
+		StringBuffer sb = new StringBuffer();
+		while (m.find()) {
+			String replacement = m.group(0);
+			if ("#".equals(m.group(1))) {
+				replacement = new String(Character.toChars(Integer.parseInt(m.group(2))));
+			} else if ("#x".equals(m.group(1))) {
+				replacement = new String(Character.toChars(Integer.parseInt(m.group(2), 16)));
+			} else if ("lt".equals(m.group(2))) {
+				replacement = "<";
+			} else if ("gt".equals(m.group(2))) {
+				replacement = ">";
+			} else if ("amp".equals(m.group(2))) {
+				replacement = "&";
+			} else if ("quot".equals(m.group(2))) {
+				replacement = "\"";
+			} else if ("apos".equals(m.group(2))) {
+				replacement = "'";
+			}
+			m.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+		}
+		m.appendTail(sb);
+		return sb.toString();
+	}
+
+	private String localName(String qname) {
+		return qname.substring(qname.indexOf(':') + 1);
+	}
+
+	private boolean isWhitespace(int b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+
+	private long position() {
+		return bufferOffset + pos;
+	}
+
+	private int read() throws IOException {
+		if (pos == limit) {
+			bufferOffset += limit;
+			pos = 0;
+			limit = 0;
+			fill();
+			if (limit <= 0) {
+				return -1;
+			}
+		}
+		return buffer[pos++] & 0xff;
+	}
+
+	private void fill() throws IOException {
+		int n = in.read(buffer, limit, buffer.length - limit);
+		if (n > 0) {
+			limit += n;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Lists and extracts the folders of an EAD file. There is an implementation for every way of reading the file, e.g.
+ * parsing it into a DOM ({@link EADDocument}) or reading it folder by folder ({@link EADStreamReader}).
+ */
+public interface FolderReader {
+
+	/**
+	 * @return IDs of all folders on level <code>class</code> in document order.
+	 */
+	List<String> getFolderIds() throws Exception;
+
+	/**
+	 * Extract folders and pass each of them on as soon as it has been extracted. Folders that are not found are
+	 * left out, it is up to the caller to report them.
+	 *
+	 * @param folderIds IDs of the folders to extract or <code>null</code> for all folders.
+	 * @param extractor Extractor to use.
+	 * @param indent    Whether to indent the extracted XML.
+	 * @param handler   Receives the extracted folders.
+	 */
+	void extract(Collection<String> folderIds, Extractor extractor, boolean indent, FolderHandler handler)
+			throws Exception;
+
+	/**
+	 * Release resources held for reading, e.g. an open file.
+	 */
+	void close() throws Exception;
+}
@@ -0,0 +1,310 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits the output of an extraction profile into one serialized document per folder, while the profile runs.
+ * <p/>
+ * Receives the SAX events of a <code>bundle</code> document and writes each selected
+ * <code>bundle/folders/folder</code> as its own <code>bundle</code> document together with the
+ * <code>id</code>, <code>title</code> and <code>owner</code> elements of the bundle. Those have to precede
+ * <code>folders</code>, as they do in the extraction profiles. Events of a folder are buffered only until its
+ * <code>id</code> is known. Selected folders are then serialized as they arrive, all others are dropped.
+ * No DOM is built for the profile output or the single folder documents.
+ * <p/>
+ * Serialized folders are either collected (see {@link #getFolders()}) or passed to a {@link FolderHandler} as soon as
+ * they are complete, so that only a single folder is held at a time.
+ */
+class FolderSplitter extends DefaultHandler {
+
+	private static final Set<String> HEADER_ELEMENTS = new HashSet<String>(Arrays.asList("id", "title", "owner"));
+	private final Set<String> folderIds;
+	private final boolean indent;
+	private final SAXTransformerFactory factory;
+	private final FolderHandler handler;
+	private final Set<String> done = new HashSet<String>();
+	private final UniqueFolderIds ids = new UniqueFolderIds();
+	private final Map<String, byte[]> folders = new LinkedHashMap<String, byte[]>();
+	private final SAXEventBuffer header = new SAXEventBuffer();
+	private final SAXEventBuffer folderStart = new SAXEventBuffer();
+	private StartTag bundleTag;
+	private StartTag foldersTag;
+	private int depth;
+	private ContentHandler target;
+	private State state = State.Outside;
+	private StringBuilder folderId;
+	private TransformerHandler out;
+	private ByteArrayOutputStream buffer;
+
+	/**
+	 * @param folderIds IDs of the folders to serialize or <code>null</code> for all folders.
+	 * @param indent    Whether to indent the serialized documents.
+	 */
+	FolderSplitter(Collection<String> folderIds, boolean indent) throws TransformerConfigurationException {
+		this(folderIds, indent, null);
+	}
+
+	/**
+	 * @param folderIds IDs of the folders to serialize or <code>null</code> for all folders.
+	 * @param indent    Whether to indent the serialized documents.
+	 * @param handler   Receives every serialized folder as soon as it is complete, or <code>null</code> to collect
+	 *                  the folders instead.
+	 */
+	FolderSplitter(Collection<String> folderIds, boolean indent, FolderHandler handler)
+			throws TransformerConfigurationException {
+		this.folderIds = (folderIds == null) ? null : new HashSet<String>(folderIds);
+		this.indent = indent;
+		this.handler = handler;
+		this.factory = (SAXTransformerFactory) TransformerFactory.newInstance();
+	}
+
+	/**
+	 * @return Number of folders serialized so far.
+	 */
+	public int getFolderCount() {
+		return done.size();
+	}
+
+	/**
+	 * @return Serialized folder documents mapped by folder ID, in document order. If a folder ID occurs more than
+	 *         once, only the first folder is contained. Empty if the folders are passed to a handler.
+	 */
+	public Map<String, byte[]> getFolders() {
+		return folders;
+	}
+
+	/**
+	 * @param folderIds IDs of the wanted folders or <code>null</code> for all folders.
+	 * @return Serialized folder documents mapped by folder ID, in the order of the given IDs or, if no IDs are given,
+	 *         in document order.
+	 * @throws Exception if one of the given folders has not been found.
+	 */
+	public Map<String, byte[]> getFolders(Collection<String> folderIds) throws Exception {
+		if (folderIds == null) {
+			return folders;
+		}
+
+		Map<String, byte[]> result = new LinkedHashMap<String, byte[]>();
+		for (String folderId : folderIds) {
+			byte[] folder = folders.get(folderId);
+			if (folder == null) {
+				throw new Exception("No folder with ID " + folderId);
+			}
+			result.put(folderId, folder);
+		}
+		return result;
+	}
+
+	@Override
+	public void startPrefixMapping(String prefix, String uri) throws SAXException {
+		if (target != null) {
+			target.startPrefixMapping(prefix, uri);
+		}
+	}
+
+	@Override
+	public void endPrefixMapping(String prefix) throws SAXException {
+		if (target != null) {
+			target.endPrefixMapping(prefix);
+		}
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+		depth++;
+		String name = localName.isEmpty() ? qName : localName;
+
+		if (depth == 1) {
+			bundleTag = new StartTag(uri, localName, qName, atts);
+		} else if (depth == 2 && state == State.Outside) {
+			if (HEADER_ELEMENTS.contains(name)) {
+				target = header;
+			} else if ("folders".equals(name)) {
+				foldersTag = new StartTag(uri, localName, qName, atts);
+			}
+		} else if (depth == 3 && foldersTag != null && "folder".equals(name)) {
+			state = State.FolderStart;
+			folderStart.clear();
+			folderId = null;
+			target = folderStart;
+		} else if (depth == 4 && state == State.FolderStart && "id".equals(name)) {
+			folderId = new StringBuilder();
+		}
+
+		if (target != null) {
+			target.startElement(uri, localName, qName, atts);
+		}
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		if (target != null) {
+			target.endElement(uri, localName, qName);
+		}
+
+		if (depth == 2) {
+			target = null;
+			foldersTag = null;
+		} else if (depth == 3 && state != State.Outside) {
+			if (state == State.Folder) {
+				closeFolder();
+			}
+			state = State.Outside;
+			target = null;
+		} else if (depth == 4 && state == State.FolderStart && folderId != null) {
+			String id = folderId.toString().trim();
+			if (isWanted(id)) {
+				openFolder(id);
+				folderStart.replay(out);
+				target = out;
+				state = State.Folder;
+			} else {
+				target = null;
+				state = State.Skipped;
+			}
+		}
+
+		depth--;
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (state == State.FolderStart && folderId != null && depth == 4) {
+			folderId.append(ch, start, length);
+		}
+		if (target != null) {
+			target.characters(ch, start, length);
+		}
+	}
+
+	@Override
+	public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+		if (target != null) {
+			target.ignorableWhitespace(ch, start, length);
+		}
+	}
+
+	@Override
+	public void processingInstruction(String target, String data) throws SAXException {
+		if (this.target != null) {
+			this.target.processingInstruction(target, data);
+		}
+	}
+
+	private boolean isWanted(String id) {
+		return ((folderIds == null) || folderIds.contains(id)) && ids.add(id);
+	}
+
+	private void openFolder(String id) throws SAXException {
+		try {
+			out = factory.newTransformerHandler();
+		} catch (TransformerConfigurationException e) {
+			throw new SAXException(e);
+		}
+		Transformer serializer = out.getTransformer();
+		serializer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+		serializer.setOutputProperty(OutputKeys.INDENT, indent ? "yes" : "no");
+		// same XML declaration as documents serialized from a DOM
+		serializer.setOutputProperty(OutputKeys.STANDALONE, "no");
+		buffer = new ByteArrayOutputStream();
+		out.setResult(new StreamResult(buffer));
+
+		folderId = new StringBuilder(id);
+		out.startDocument();
+		bundleTag.send(out);
+		header.replay(out);
+		foldersTag.send(out);
+	}
+
+	private void closeFolder() throws SAXException {
+		foldersTag.end(out);
+		bundleTag.end(out);
+		out.endDocument();
+		String id = folderId.toString();
+		byte[] xml = buffer.toByteArray();
+		out = null;
+		buffer = null;
+		done.add(id);
+
+		if (handler == null) {
+			folders.put(id, xml);
+			return;
+		}
+		try {
+			handler.folder(id, xml);
+		} catch (SAXException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new SAXException(e);
+		}
+	}
+
+	private enum State {
+		Outside,
+		FolderStart,
+		Folder,
+		Skipped
+	}
+
+	private static class StartTag {
+		private final String uri;
+		private final String localName;
+		private final String qName;
+		private final Attributes atts;
+
+		private StartTag(String uri, String localName, String qName, Attributes atts) {
+			this.uri = uri;
+			this.localName = localName;
+			this.qName = qName;
+			this.atts = new AttributesImpl(atts);
+		}
+
+		private void send(ContentHandler handler) throws SAXException {
+			handler.startElement(uri, localName, qName, atts);
+		}
+
+		private void end(ContentHandler handler) throws SAXException {
+			handler.endElement(uri, localName, qName);
+		}
+	}
+}
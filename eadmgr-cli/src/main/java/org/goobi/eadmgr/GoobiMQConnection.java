@@ -26,11 +26,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jms.*;
-import java.util.Enumeration;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
-
-import static java.lang.Thread.sleep;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class GoobiMQConnection {
 
@@ -38,20 +41,50 @@ public class GoobiMQConnection {
 	private Session session;
 	private MessageProducer producer;
 	private MessageConsumer consumer;
-	private SynchronousMessageListener listener;
+	private ResultDispatcher dispatcher;
+	private List<ResultDispatcher.PendingResult> registered = new LinkedList<ResultDispatcher.PendingResult>();
+	private long resultTimeout;
+	private GoobiMQConnectionPool pool;
+	private GoobiMQConnectionPool.PooledProducer pooledProducer;
 	private Logger logger = LoggerFactory.getLogger(GoobiMQConnection.class);
 
 	public GoobiMQConnection(String brokerUrl, String subjectQueue, String resultTopic) throws JMSException {
 		initActiveMqConnection(brokerUrl, subjectQueue, resultTopic);
 	}
 
+	/**
+	 * Create a connection handle backed by a pooled producer and a shared result subscription.
+	 * Closing it returns the producer to the pool.
+	 */
+	GoobiMQConnection(GoobiMQConnectionPool pool, GoobiMQConnectionPool.PooledProducer pooledProducer,
+	                  ResultDispatcher dispatcher) {
+		this.pool = pool;
+		this.pooledProducer = pooledProducer;
+		this.session = pooledProducer.getSession();
+		this.producer = pooledProducer.getProducer();
+		this.dispatcher = dispatcher;
+	}
+
 	private void initActiveMqConnection(String brokerUrl, String subjectQueue, String resultTopic) throws JMSException {
 		logger.trace("Initialize ActiveMQ connection to {}.", brokerUrl);
 		logger.trace("Using queue {}.", subjectQueue);
 
-		ConnectionFactory connectionFactory = new ActiveMQConnectionFactory(brokerUrl);
-		connection = connectionFactory.createConnection();
-		connection.start();
+		Metrics.Timer timer = Metrics.getInstance().start(Metrics.CONNECT);
+		try {
+			ConnectionFactory connectionFactory = new ActiveMQConnectionFactory(brokerUrl);
+			connection = connectionFactory.createConnection();
+			dispatcher = new ResultDispatcher();
+			connection.setExceptionListener(new ExceptionListener() {
+				@Override
+				public void onException(JMSException e) {
+					logger.error("ActiveMQ connection failed: " + e.getMessage());
+					dispatcher.failAll(e);
+				}
+			});
+			connection.start();
+		} finally {
+			timer.stop();
+		}
 
 		logger.trace("Connection established. Now creating session.");
 
@@ -59,67 +92,117 @@ public class GoobiMQConnection {
 		producer = session.createProducer(session.createQueue(subjectQueue));
 
 		consumer = session.createConsumer(session.createTopic(resultTopic));
-		listener = new SynchronousMessageListener();
-		consumer.setMessageListener(listener);
+		consumer.setMessageListener(dispatcher);
+	}
+
+	/**
+	 * Set how long {@link #sendAndWaitForResult(Map)} waits for a result message.
+	 *
+	 * @param timeout Timeout in milliseconds. Zero means to wait forever.
+	 */
+	public void setResultTimeout(long timeout) {
+		this.resultTimeout = timeout;
 	}
 
 	public void close() throws JMSException {
+		if (pool != null) {
+			// The dispatcher is shared by all borrowers of the result topic and outlives this handle, so requests
+			// still waiting for a result have to be withdrawn from it explicitly.
+			synchronized (registered) {
+				for (ResultDispatcher.PendingResult result : registered) {
+					result.cancel(false);
+				}
+				registered.clear();
+			}
+			logger.trace("Returning ActiveMQ producer to pool.");
+			pool.release(pooledProducer);
+			pool = null;
+			return;
+		}
+
 		logger.trace("Closing ActiveMQ connection.");
 		if (connection != null) {
 			connection.close();
+			dispatcher.failAll(new JMSException("Connection closed before result message has been received."));
 		}
 	}
 
 	public void send(Map<String, Object> message) throws JMSException {
 		logger.trace("Sending ActiveMQ MapMessage {}.", message);
-		MapMessage mapMessage = session.createMapMessage();
-		for (String key : message.keySet()) {
-			mapMessage.setObject(key, message.get(key));
+		Metrics.Timer timer = Metrics.getInstance().start(Metrics.SEND);
+		try {
+			MapMessage mapMessage = session.createMapMessage();
+			for (String key : message.keySet()) {
+				mapMessage.setObject(key, message.get(key));
+			}
+			producer.send(mapMessage);
+			Metrics.getInstance().count(Metrics.MESSAGES, 1);
+		} catch (JMSException e) {
+			if (pool != null) {
+				pool.invalidate(pooledProducer);
+			}
+			throw e;
+		} finally {
+			timer.stop();
 		}
-		producer.send(mapMessage);
 	}
 
-	public Map<String, Object> sendAndWaitForResult(Map<String, Object> message) throws JMSException {
-		send(message);
-
-		logger.trace("Receiving result message");
-		Message msg = listener.waitForMessage();
-
-		HashMap result = new HashMap<String, Object>();
-		if (msg instanceof MapMessage) {
-			MapMessage mmsg = (MapMessage) msg;
-			Enumeration nameEnum = mmsg.getMapNames();
-			while (nameEnum.hasMoreElements()) {
-				String propertyName = (String) nameEnum.nextElement();
-				result.put(propertyName, mmsg.getObject(propertyName));
-			}
-			logger.debug("Result message received");
-		} else {
-			logger.debug("No appropriate result message received");
+	/**
+	 * Send a message without waiting for its result.
+	 *
+	 * @param message Message fields. The <code>id</code> field is used to match the result message.
+	 * @return Future completed with the fields of the result message.
+	 */
+	public Future<Map<String, Object>> sendAsync(Map<String, Object> message) throws JMSException {
+		Object id = message.get(ResultDispatcher.ID_FIELD);
+		if (id == null) {
+			throw new IllegalArgumentException("Message has no " + ResultDispatcher.ID_FIELD + " field.");
 		}
 
+		ResultDispatcher.PendingResult result = dispatcher.register(String.valueOf(id));
+		track(result);
+		try {
+			send(message);
+		} catch (JMSException e) {
+			result.cancel(false);
+			throw e;
+		}
 		return result;
 	}
 
-	private class SynchronousMessageListener implements MessageListener {
-		private Message last;
-
-		@Override
-		public void onMessage(Message message) {
-			last = message;
+	private void track(ResultDispatcher.PendingResult result) {
+		synchronized (registered) {
+			for (Iterator<ResultDispatcher.PendingResult> it = registered.iterator(); it.hasNext(); ) {
+				if (it.next().isDone()) {
+					it.remove();
+				}
+			}
+			registered.add(result);
 		}
+	}
 
-		public Message waitForMessage() {
-			while (last == null) {
-				try {
-					sleep(100);
-				} catch (InterruptedException e) {
-					break;
-				}
+	public Map<String, Object> sendAndWaitForResult(Map<String, Object> message)
+			throws JMSException, InterruptedException, TimeoutException {
+		Future<Map<String, Object>> result = sendAsync(message);
+
+		logger.trace("Receiving result message");
+		Metrics.Timer timer = Metrics.getInstance().start(Metrics.RESULT_WAIT);
+		try {
+			if (resultTimeout > 0) {
+				return result.get(resultTimeout, TimeUnit.MILLISECONDS);
+			} else {
+				return result.get();
+			}
+		} catch (TimeoutException e) {
+			result.cancel(false);
+			throw e;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof JMSException) {
+				throw (JMSException) e.getCause();
 			}
-			Message msg = last;
-			last = null;
-			return msg;
+			throw new JMSException(String.valueOf(e.getCause()));
+		} finally {
+			timer.stop();
 		}
 	}
 }
@@ -0,0 +1,222 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.*;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares ActiveMQ connections between process creations in long-running operation.
+ * <p/>
+ * There is one pool per broker URL. It keeps a single started connection, cached sessions with producers per subject
+ * queue and one shared subscription per result topic, whose {@link ResultDispatcher} correlates the results of all
+ * borrowers. If the connection reports an exception or a send fails, the pool reconnects on the next borrow, so
+ * steady-state sends skip connection setup altogether.
+ * <p/>
+ * Usage:
+ * <pre>
+ * GoobiMQConnection conn = GoobiMQConnectionPool.getInstance(brokerUrl).borrow(subjectQueue, resultTopic);
+ * try {
+ *     conn.sendAndWaitForResult(message);
+ * } finally {
+ *     conn.close(); // returns the producer to the pool
+ * }
+ * </pre>
+ */
+public class GoobiMQConnectionPool {
+
+	private static Map<String, GoobiMQConnectionPool> pools = new HashMap<String, GoobiMQConnectionPool>();
+	private static Logger logger = LoggerFactory.getLogger(GoobiMQConnectionPool.class);
+	private String brokerUrl;
+	private ConnectionFactory connectionFactory;
+	private Connection connection;
+	private volatile boolean isBroken;
+	private Map<String, LinkedList<PooledProducer>> producers = new HashMap<String, LinkedList<PooledProducer>>();
+	private Map<String, ResultDispatcher> dispatchers = new ConcurrentHashMap<String, ResultDispatcher>();
+
+	private GoobiMQConnectionPool(String brokerUrl) {
+		this.brokerUrl = brokerUrl;
+		this.connectionFactory = new ActiveMQConnectionFactory(brokerUrl);
+	}
+
+	public static synchronized GoobiMQConnectionPool getInstance(String brokerUrl) {
+		GoobiMQConnectionPool pool = pools.get(brokerUrl);
+		if (pool == null) {
+			pool = new GoobiMQConnectionPool(brokerUrl);
+			pools.put(brokerUrl, pool);
+		}
+		return pool;
+	}
+
+	/**
+	 * Close all pools and their connections.
+	 */
+	public static synchronized void closeAll() {
+		for (GoobiMQConnectionPool pool : pools.values()) {
+			pool.close();
+		}
+		pools.clear();
+	}
+
+	/**
+	 * Borrow a connection handle for the given queue and result topic.
+	 *
+	 * @param subjectQueue Queue to send process creation messages to.
+	 * @param resultTopic  Topic to receive result messages from.
+	 * @return Connection handle. Closing it returns its producer to the pool.
+	 */
+	public synchronized GoobiMQConnection borrow(String subjectQueue, String resultTopic) throws JMSException {
+		ensureConnected();
+
+		ResultDispatcher dispatcher = dispatchers.get(resultTopic);
+		if (dispatcher == null) {
+			logger.trace("Subscribing to result topic {}.", resultTopic);
+			Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			dispatcher = new ResultDispatcher();
+			session.createConsumer(session.createTopic(resultTopic)).setMessageListener(dispatcher);
+			dispatchers.put(resultTopic, dispatcher);
+		}
+
+		LinkedList<PooledProducer> idle = producers.get(subjectQueue);
+		PooledProducer producer = (idle == null) ? null : idle.poll();
+		if (producer == null) {
+			logger.trace("Creating producer for queue {}.", subjectQueue);
+			Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			producer = new PooledProducer(subjectQueue, session, session.createProducer(session.createQueue(subjectQueue)), connection);
+		}
+
+		return new GoobiMQConnection(this, producer, dispatcher);
+	}
+
+	synchronized void release(PooledProducer producer) {
+		if (isBroken || (producer.connection != connection)) {
+			producer.close();
+			return;
+		}
+
+		LinkedList<PooledProducer> idle = producers.get(producer.queue);
+		if (idle == null) {
+			idle = new LinkedList<PooledProducer>();
+			producers.put(producer.queue, idle);
+		}
+		idle.add(producer);
+	}
+
+	synchronized void invalidate(PooledProducer producer) {
+		logger.warn("Send to {} failed. Reconnecting on next use.", brokerUrl);
+		producer.close();
+		isBroken = true;
+	}
+
+	public synchronized void close() {
+		logger.trace("Closing pooled ActiveMQ connection to {}.", brokerUrl);
+		closeConnection(new JMSException("Connection pool closed before result message has been received."));
+	}
+
+	private void ensureConnected() throws JMSException {
+		if ((connection != null) && !isBroken) {
+			return;
+		}
+
+		if (connection != null) {
+			closeConnection(new JMSException("Connection to " + brokerUrl + " lost before result message has been received."));
+		}
+
+		logger.trace("Initialize pooled ActiveMQ connection to {}.", brokerUrl);
+		Metrics.Timer timer = Metrics.getInstance().start(Metrics.CONNECT);
+		try {
+			isBroken = false;
+			connection = connectionFactory.createConnection();
+			connection.setExceptionListener(new ExceptionListener() {
+				@Override
+				public void onException(JMSException e) {
+					logger.error("ActiveMQ connection failed: " + e.getMessage());
+					isBroken = true;
+					failAll(e);
+				}
+			});
+			connection.start();
+		} finally {
+			timer.stop();
+		}
+	}
+
+	private void failAll(Exception cause) {
+		for (ResultDispatcher dispatcher : dispatchers.values()) {
+			dispatcher.failAll(cause);
+		}
+	}
+
+	private void closeConnection(Exception cause) {
+		failAll(cause);
+		dispatchers.clear();
+		producers.clear();
+		if (connection != null) {
+			try {
+				connection.close();
+			} catch (JMSException e) {
+				logger.debug("Error closing ActiveMQ connection: " + e.getMessage());
+			}
+			connection = null;
+		}
+	}
+
+	/**
+	 * Session and producer for one subject queue, used by one borrower at a time.
+	 */
+	static class PooledProducer {
+		private final String queue;
+		private final Session session;
+		private final MessageProducer producer;
+		private final Connection connection;
+
+		private PooledProducer(String queue, Session session, MessageProducer producer, Connection connection) {
+			this.queue = queue;
+			this.session = session;
+			this.producer = producer;
+			this.connection = connection;
+		}
+
+		Session getSession() {
+			return session;
+		}
+
+		MessageProducer getProducer() {
+			return producer;
+		}
+
+		private void close() {
+			try {
+				session.close();
+			} catch (JMSException e) {
+				// session is discarded anyway
+			}
+		}
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records wall time, CPU time and allocated bytes of processing stages, plus plain counters, for the whole JVM.
+ * <p/>
+ * Usage:
+ * <pre>
+ * Metrics.Timer timer = Metrics.getInstance().start(Metrics.PARSE);
+ * try {
+ *     ...
+ * } finally {
+ *     timer.stop();
+ * }
+ * </pre>
+ * CPU time and allocated bytes are measured for the current thread, so a timer has to be stopped on the thread that
+ * started it. They are reported as zero if the JVM doesn't support measuring them.
+ * <p/>
+ * Values are cumulative. The metrics of a single run are obtained by subtracting a {@link #snapshot()} taken
+ * before the run from one taken after it.
+ */
+public class Metrics {
+
+	public static final String SCHEMA_LOAD = "schema_load";
+	public static final String PROFILE_LOAD = "profile_load";
+	public static final String INDEX = "index";
+	public static final String PARSE = "parse";
+	public static final String VALIDATE = "validate";
+	/**
+	 * Transformation by the extraction profile, including selecting and serializing folders, which happen while
+	 * the transformation runs.
+	 */
+	public static final String TRANSFORM = "transform";
+	public static final String ENCODE = "encode";
+	public static final String CONNECT = "connect";
+	public static final String SEND = "send";
+	public static final String RESULT_WAIT = "result_wait";
+	public static final String FOLDERS = "folders";
+	public static final String MESSAGES = "messages";
+	public static final String PAYLOAD_BYTES = "payload_bytes";
+	private static final String PROMETHEUS_PREFIX = "eadmgr_";
+	private static Metrics instance;
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private final boolean isCpuTimeSupported = threads.isCurrentThreadCpuTimeSupported();
+	private final boolean isAllocationSupported = (threads instanceof com.sun.management.ThreadMXBean)
+			&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported();
+	private final Map<String, Stage> stages = new TreeMap<String, Stage>();
+	private final Map<String, Long> counters = new TreeMap<String, Long>();
+
+	public static synchronized Metrics getInstance() {
+		if (instance == null) {
+			instance = new Metrics();
+		}
+		return instance;
+	}
+
+	/**
+	 * Start measuring a stage on the current thread.
+	 *
+	 * @param stage Name of the stage.
+	 * @return Timer to stop when the stage is done.
+	 */
+	public Timer start(String stage) {
+		return new Timer(stage);
+	}
+
+	/**
+	 * Add to a counter.
+	 *
+	 * @param counter Name of the counter.
+	 * @param delta   Value to add.
+	 */
+	public synchronized void count(String counter, long delta) {
+		Long value = counters.get(counter);
+		counters.put(counter, (value == null) ? delta : value + delta);
+	}
+
+	public synchronized Snapshot snapshot() {
+		Snapshot snapshot = new Snapshot();
+		for (Map.Entry<String, Stage> e : stages.entrySet()) {
+			snapshot.stages.put(e.getKey(), e.getValue().copy());
+		}
+		snapshot.counters.putAll(counters);
+		return snapshot;
+	}
+
+	private synchronized void record(String stage, long wallNanos, long cpuNanos, long allocatedBytes) {
+		Stage s = stages.get(stage);
+		if (s == null) {
+			s = new Stage();
+			stages.put(stage, s);
+		}
+		s.count++;
+		s.wallNanos += wallNanos;
+		s.cpuNanos += cpuNanos;
+		s.allocatedBytes += allocatedBytes;
+	}
+
+	private long currentCpuTime() {
+		return isCpuTimeSupported ? threads.getCurrentThreadCpuTime() : 0;
+	}
+
+	private long currentAllocatedBytes() {
+		return isAllocationSupported
+				? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId())
+				: 0;
+	}
+
+	/**
+	 * Measurement of a single execution of a stage.
+	 */
+	public class Timer {
+		private final String stage;
+		private final long wallStart;
+		private final long cpuStart;
+		private final long allocatedStart;
+		private boolean isStopped;
+
+		private Timer(String stage) {
+			this.stage = stage;
+			this.allocatedStart = currentAllocatedBytes();
+			this.cpuStart = currentCpuTime();
+			this.wallStart = System.nanoTime();
+		}
+
+		/**
+		 * Record the stage. Stopping a timer more than once has no effect.
+		 */
+		public void stop() {
+			if (isStopped) {
+				return;
+			}
+			isStopped = true;
+			long wall = System.nanoTime() - wallStart;
+			long cpu = currentCpuTime() - cpuStart;
+			long allocated = currentAllocatedBytes() - allocatedStart;
+			record(stage, wall, cpu, allocated);
+		}
+	}
+
+	/**
+	 * Immutable copy of all metrics at some point in time.
+	 */
+	public static class Snapshot {
+		private final Map<String, Stage> stages = new TreeMap<String, Stage>();
+		private final Map<String, Long> counters = new TreeMap<String, Long>();
+
+		/**
+		 * @param earlier Snapshot taken before this one.
+		 * @return Metrics recorded between both snapshots.
+		 */
+		public Snapshot minus(Snapshot earlier) {
+			Snapshot result = new Snapshot();
+			for (Map.Entry<String, Stage> e : stages.entrySet()) {
+				Stage before = earlier.stages.get(e.getKey());
+				Stage s = e.getValue().copy();
+				if (before != null) {
+					s.count -= before.count;
+					s.wallNanos -= before.wallNanos;
+					s.cpuNanos -= before.cpuNanos;
+					s.allocatedBytes -= before.allocatedBytes;
+				}
+				if (s.count > 0) {
+					result.stages.put(e.getKey(), s);
+				}
+			}
+			for (Map.Entry<String, Long> e : counters.entrySet()) {
+				Long before = earlier.counters.get(e.getKey());
+				long value = e.getValue() - ((before == null) ? 0 : before);
+				if (value != 0) {
+					result.counters.put(e.getKey(), value);
+				}
+			}
+			return result;
+		}
+
+		public String toJson() {
+			StringBuilder sb = new StringBuilder("{\"stages\":{");
+			String separator = "";
+			for (Map.Entry<String, Stage> e : stages.entrySet()) {
+				Stage s = e.getValue();
+				sb.append(separator).append('"').append(e.getKey()).append("\":{")
+						.append("\"count\":").append(s.count)
+						.append(",\"wallSeconds\":").append(seconds(s.wallNanos))
+						.append(",\"cpuSeconds\":").append(seconds(s.cpuNanos))
+						.append(",\"allocatedBytes\":").append(s.allocatedBytes)
+						.append('}');
+				separator = ",";
+			}
+			sb.append("},\"counters\":{");
+			separator = "";
+			for (Map.Entry<String, Long> e : counters.entrySet()) {
+				sb.append(separator).append('"').append(e.getKey()).append("\":").append(e.getValue());
+				separator = ",";
+			}
+			return sb.append("}}").toString();
+		}
+
+		public String toPrometheus() {
+			StringBuilder sb = new StringBuilder();
+			appendStageMetric(sb, "stage_calls_total", "Number of times a processing stage ran.", 0);
+			appendStageMetric(sb, "stage_wall_seconds_total", "Wall clock time spent in a processing stage.", 1);
+			appendStageMetric(sb, "stage_cpu_seconds_total", "CPU time spent in a processing stage.", 2);
+			appendStageMetric(sb, "stage_allocated_bytes_total", "Bytes allocated in a processing stage.", 3);
+			for (Map.Entry<String, Long> e : counters.entrySet()) {
+				String name = PROMETHEUS_PREFIX + e.getKey() + "_total";
+				sb.append("# TYPE ").append(name).append(" counter\n");
+				sb.append(name).append(' ').append(e.getValue()).append('\n');
+			}
+			return sb.toString();
+		}
+
+		private void appendStageMetric(StringBuilder sb, String metric, String help, int field) {
+			String name = PROMETHEUS_PREFIX + metric;
+			sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+			sb.append("# TYPE ").append(name).append(" counter\n");
+			for (Map.Entry<String, Stage> e : stages.entrySet()) {
+				Stage s = e.getValue();
+				String value;
+				switch (field) {
+					case 0:
+						value = String.valueOf(s.count);
+						break;
+					case 1:
+						value = seconds(s.wallNanos);
+						break;
+					case 2:
+						value = seconds(s.cpuNanos);
+						break;
+					default:
+						value = String.valueOf(s.allocatedBytes);
+				}
+				sb.append(name).append("{stage=\"").append(e.getKey()).append("\"} ").append(value).append('\n');
+			}
+		}
+
+		private static String seconds(long nanos) {
+			return String.format(Locale.ROOT, "%.6f", nanos / 1e9);
+		}
+	}
+
+	private static class Stage {
+		private long count;
+		private long wallNanos;
+		private long cpuNanos;
+		private long allocatedBytes;
+
+		private Stage copy() {
+			Stage s = new Stage();
+			s.count = count;
+			s.wallNanos = wallNanos;
+			s.cpuNanos = cpuNanos;
+			s.allocatedBytes = allocatedBytes;
+			return s;
+		}
+	}
+}
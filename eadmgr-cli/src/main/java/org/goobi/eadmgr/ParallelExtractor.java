@@ -0,0 +1,213 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.dom.DOMSource;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Extracts many folders of an indexed EAD file in parallel.
+ * <p/>
+ * The folders are split into chunks of consecutive folders. Each chunk is read as a fragment of the EAD file (see
+ * {@link FolderIndex#readFragment(File, List)}), parsed into its own DOM and transformed by its own transformer, so
+ * worker threads share nothing but the thread safe {@link Extractor}. Results are handed on in the order
+ * of the given folders, and only a limited number of chunks is extracted ahead of the one handed on next.
+ */
+public class ParallelExtractor implements FolderReader {
+
+	private Logger logger = LoggerFactory.getLogger(ParallelExtractor.class);
+	private final File eadFile;
+	private final FolderIndex index;
+	private final int threads;
+	private final int chunkSize;
+
+	/**
+	 * @param eadFile           EAD file.
+	 * @param index             Folder index of the EAD file.
+	 * @param threads           Number of chunks extracted at the same time.
+	 * @param chunkSize         Number of folders parsed and transformed together.
+	 */
+	public ParallelExtractor(File eadFile, FolderIndex index, int threads, int chunkSize) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Number of threads must be at least 1.");
+		}
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be at least 1.");
+		}
+		this.eadFile = eadFile;
+		this.index = index;
+		this.threads = threads;
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public List<String> getFolderIds() {
+		return index.getFolderIds();
+	}
+
+	/**
+	 * Extract the given folders that are in the index, in the order of the given IDs.
+	 */
+	@Override
+	public void extract(Collection<String> folderIds, Extractor extractor, boolean indent, FolderHandler handler)
+			throws Exception {
+		List<FolderIndex.Entry> entries = new ArrayList<FolderIndex.Entry>();
+		if (folderIds == null) {
+			entries.addAll(index.getFolders());
+		} else {
+			for (String id : new LinkedHashSet<String>(folderIds)) {
+				FolderIndex.Entry entry = index.getFolder(id);
+				if (entry != null) {
+					entries.add(entry);
+				}
+			}
+		}
+		extractEntries(entries, extractor, indent, handler);
+	}
+
+	/**
+	 * Extract the given folders.
+	 *
+	 * @param entries   Folders to extract.
+	 * @param extractor Extractor shared by all worker threads.
+	 * @param indent    Whether to indent the extracted XML.
+	 * @param handler   Receives the extracted folders in the order of the given entries. If several entries have
+	 *                  the same ID, only the first one is extracted. Folders the extractor yields no data for are
+	 *                  left out.
+	 */
+	private void extractEntries(List<FolderIndex.Entry> entries, Extractor extractor, boolean indent,
+			FolderHandler handler) throws Exception {
+		entries = unique(entries);
+		List<List<FolderIndex.Entry>> chunks = new ArrayList<List<FolderIndex.Entry>>();
+		for (int i = 0; i < entries.size(); i += chunkSize) {
+			chunks.add(entries.subList(i, Math.min(i + chunkSize, entries.size())));
+		}
+		logger.debug("Extracting {} folders in {} chunks using {} threads", entries.size(), chunks.size(), threads);
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, chunks.size())));
+		try {
+			LinkedList<Future<Map<String, byte[]>>> pending = new LinkedList<Future<Map<String, byte[]>>>();
+			int next = 0;
+			for (List<FolderIndex.Entry> chunk : chunks) {
+				// keep all workers busy, but don't let finished chunks pile up in memory
+				while (pending.size() >= 2 * threads) {
+					handle(chunks.get(next++), pending.removeFirst(), handler);
+				}
+				pending.add(executor.submit(extractTask(chunk, extractor, indent)));
+			}
+			while (!pending.isEmpty()) {
+				handle(chunks.get(next++), pending.removeFirst(), handler);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Override
+	public void close() {
+		// nothing to release, every chunk is read on its own
+	}
+
+	private List<FolderIndex.Entry> unique(List<FolderIndex.Entry> entries) {
+		List<FolderIndex.Entry> result = new ArrayList<FolderIndex.Entry>(entries.size());
+		UniqueFolderIds ids = new UniqueFolderIds();
+		for (FolderIndex.Entry entry : entries) {
+			if (ids.add(entry.getId())) {
+				result.add(entry);
+			}
+		}
+		return result;
+	}
+
+	private void handle(List<FolderIndex.Entry> chunk, Future<Map<String, byte[]>> future, FolderHandler handler)
+			throws Exception {
+		Map<String, byte[]> folders;
+		try {
+			folders = future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+		for (FolderIndex.Entry entry : chunk) {
+			byte[] xml = folders.get(entry.getId());
+			if (xml != null) {
+				handler.folder(entry.getId(), xml);
+			}
+		}
+	}
+
+	private Callable<Map<String, byte[]>> extractTask(final List<FolderIndex.Entry> chunk, final Extractor extractor,
+			final boolean indent) {
+		return new Callable<Map<String, byte[]>>() {
+			@Override
+			public Map<String, byte[]> call() throws Exception {
+				List<String> ids = new ArrayList<String>(chunk.size());
+				for (FolderIndex.Entry entry : chunk) {
+					ids.add(entry.getId());
+				}
+				final Map<String, byte[]> folders = new HashMap<String, byte[]>();
+				EADDocument.extract(new DOMSource(parse(chunk)), ids, extractor, indent, new FolderHandler() {
+					@Override
+					public void folder(String folderId, byte[] xml) {
+						folders.put(folderId, xml);
+					}
+				});
+				return folders;
+			}
+		};
+	}
+
+	private Document parse(List<FolderIndex.Entry> chunk) throws Exception {
+		byte[] fragment = index.readFragment(eadFile, chunk);
+		Metrics.Timer timer = Metrics.getInstance().start(Metrics.PARSE);
+		try {
+			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+			dbf.setNamespaceAware(true);
+			DocumentBuilder db = dbf.newDocumentBuilder();
+			db.setErrorHandler(new StrictErrorHandler());
+			return db.parse(new ByteArrayInputStream(fragment), eadFile.toURI().toString());
+		} finally {
+			timer.stop();
+		}
+	}
+}
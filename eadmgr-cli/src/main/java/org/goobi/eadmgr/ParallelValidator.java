@@ -0,0 +1,142 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.validation.Schema;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Validates many EAD files in parallel against one compiled schema.
+ * <p/>
+ * A compiled {@link Schema} is immutable and can be shared by all threads, but a {@link StreamingValidator} is not
+ * thread safe. Each worker thread therefore keeps its own validator and reuses it for every file it validates.
+ */
+public class ParallelValidator {
+
+	private Logger logger = LoggerFactory.getLogger(ParallelValidator.class);
+	private final Schema schema;
+	private final int threads;
+	private final int maxErrors;
+	private final ThreadLocal<StreamingValidator> validators = new ThreadLocal<StreamingValidator>();
+
+	/**
+	 * @param schema    Schema to validate against.
+	 * @param threads   Number of files validated at the same time.
+	 * @param maxErrors Number of errors after which validation of a single file is stopped.
+	 */
+	public ParallelValidator(Schema schema, int threads, int maxErrors) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Number of threads must be at least 1.");
+		}
+		this.schema = schema;
+		this.threads = threads;
+		this.maxErrors = maxErrors;
+	}
+
+	/**
+	 * Validate all given files.
+	 *
+	 * @param files EAD files to validate.
+	 * @return Results in the order of the given files.
+	 */
+	public List<Result> validate(List<File> files) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())));
+		try {
+			List<Future<Result>> futures = new ArrayList<Future<Result>>(files.size());
+			for (final File file : files) {
+				futures.add(executor.submit(new Callable<Result>() {
+					@Override
+					public Result call() throws Exception {
+						return validate(file);
+					}
+				}));
+			}
+
+			List<Result> results = new ArrayList<Result>(files.size());
+			for (int i = 0; i < files.size(); i++) {
+				try {
+					results.add(futures.get(i).get());
+				} catch (ExecutionException e) {
+					results.add(new Result(files.get(i), Collections.singletonList(String.valueOf(e.getCause().getMessage()))));
+				}
+			}
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private Result validate(File file) throws Exception {
+		logger.trace("Validating {}", file.getAbsolutePath());
+		StreamingValidator validator = validators.get();
+		if (validator == null) {
+			validator = new StreamingValidator(schema, maxErrors);
+			validators.set(validator);
+		}
+
+		List<String> errors = new ArrayList<String>();
+		for (SAXParseException e : validator.validate(file)) {
+			errors.add(StreamingValidator.format(e));
+		}
+		return new Result(file, errors);
+	}
+
+	/**
+	 * Outcome of validating a single file.
+	 */
+	public static class Result {
+		private final File file;
+		private final List<String> errors;
+
+		private Result(File file, List<String> errors) {
+			this.file = file;
+			this.errors = errors;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public boolean isValid() {
+			return errors.isEmpty();
+		}
+
+		/**
+		 * @return Validation errors, or the reason why the file could not be validated.
+		 */
+		public List<String> getErrors() {
+			return errors;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodings for the extracted XML sent with process creation messages.
+ * <p/>
+ * Plain XML is sent as string in the <code>xml</code> field, which every consumer understands. Compressed XML is
+ * sent as bytes in the <code>xmlBytes</code> field, with the name of the encoding in the <code>xmlEncoding</code>
+ * field, so that consumers can tell how to decode it.
+ */
+public enum PayloadEncoding {
+	Plain,
+	Gzip,
+	Deflate;
+
+	public static final String XML_FIELD = "xml";
+	public static final String XML_BYTES_FIELD = "xmlBytes";
+	public static final String XML_ENCODING_FIELD = "xmlEncoding";
+
+	public static PayloadEncoding forName(String name) throws Exception {
+		for (PayloadEncoding e : values()) {
+			if (e.getName().equals(name)) {
+				return e;
+			}
+		}
+		throw new Exception("Unknown payload encoding: " + name);
+	}
+
+	public String getName() {
+		return name().toLowerCase();
+	}
+
+	/**
+	 * @param xml UTF-8 encoded XML.
+	 * @return The XML in this encoding.
+	 */
+	public byte[] encode(byte[] xml) throws IOException {
+		if (this == Plain) {
+			return xml;
+		}
+
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(xml.length / 4);
+		OutputStream out = (this == Gzip) ? new GZIPOutputStream(buffer) : new DeflaterOutputStream(buffer);
+		try {
+			out.write(xml);
+		} finally {
+			out.close();
+		}
+		return buffer.toByteArray();
+	}
+}
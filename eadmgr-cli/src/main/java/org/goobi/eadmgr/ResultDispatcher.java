@@ -0,0 +1,199 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Matches result messages to the process creation messages they answer.
+ * <p/>
+ * Goobi posts the result for every process creation message as a MapMessage carrying the <code>id</code> of the
+ * original message. Pending requests are registered by this ID and completed as soon as the matching result arrives.
+ * Results for unknown IDs, e.g. for messages sent by other clients, are ignored. This allows any number of requests
+ * to be in flight on a single connection.
+ */
+public class ResultDispatcher implements MessageListener {
+
+	public static final String ID_FIELD = "id";
+	private Logger logger = LoggerFactory.getLogger(ResultDispatcher.class);
+	private ConcurrentHashMap<String, PendingResult> pending = new ConcurrentHashMap<String, PendingResult>();
+
+	/**
+	 * Register a request before sending it, so that its result cannot be missed.
+	 *
+	 * @param id Message ID of the request.
+	 * @return Future completed with the fields of the result message.
+	 */
+	public PendingResult register(String id) {
+		PendingResult result = new PendingResult(id);
+		if (pending.putIfAbsent(id, result) != null) {
+			throw new IllegalStateException("A request with ID " + id + " is already waiting for its result.");
+		}
+		return result;
+	}
+
+	/**
+	 * @return Number of requests still waiting for their result.
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Fail all pending requests, e.g. because the connection has been lost.
+	 *
+	 * @param cause Reason for failing.
+	 */
+	public void failAll(Exception cause) {
+		for (PendingResult result : pending.values()) {
+			result.fail(cause);
+		}
+	}
+
+	@Override
+	public void onMessage(Message message) {
+		try {
+			if (!(message instanceof MapMessage)) {
+				logger.debug("Ignoring result message of type {}", message.getClass().getName());
+				return;
+			}
+
+			Map<String, Object> fields = toMap((MapMessage) message);
+			Object id = fields.get(ID_FIELD);
+			PendingResult result = (id == null) ? null : pending.get(String.valueOf(id));
+			if (result == null) {
+				logger.trace("Ignoring result message for unknown ID {}", id);
+			} else {
+				logger.debug("Result message for ID {} received", id);
+				result.complete(fields);
+			}
+		} catch (JMSException e) {
+			logger.error("Cannot read result message: " + e.getMessage());
+		}
+	}
+
+	private Map<String, Object> toMap(MapMessage mmsg) throws JMSException {
+		Map<String, Object> result = new HashMap<String, Object>();
+		Enumeration<?> nameEnum = mmsg.getMapNames();
+		while (nameEnum.hasMoreElements()) {
+			String propertyName = (String) nameEnum.nextElement();
+			result.put(propertyName, mmsg.getObject(propertyName));
+		}
+		return result;
+	}
+
+	/**
+	 * Result of a single request, completed by the dispatcher.
+	 */
+	public class PendingResult implements Future<Map<String, Object>> {
+		private final String id;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile Map<String, Object> result;
+		private volatile Exception failure;
+		private volatile boolean isCancelled;
+
+		private PendingResult(String id) {
+			this.id = id;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		// Only the caller that removes this result from the pending map may set the outcome, so a late failure
+		// cannot overwrite a result that has already been delivered, or vice versa.
+		private void complete(Map<String, Object> fields) {
+			if (pending.remove(id, this)) {
+				result = fields;
+				done.countDown();
+			}
+		}
+
+		private void fail(Exception cause) {
+			if (pending.remove(id, this)) {
+				failure = cause;
+				done.countDown();
+			}
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (pending.remove(id, this)) {
+				isCancelled = true;
+				done.countDown();
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return isCancelled;
+		}
+
+		@Override
+		public boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		@Override
+		public Map<String, Object> get() throws InterruptedException, ExecutionException {
+			done.await();
+			return getResult();
+		}
+
+		@Override
+		public Map<String, Object> get(long timeout, TimeUnit unit)
+				throws InterruptedException, ExecutionException, TimeoutException {
+			if (!done.await(timeout, unit)) {
+				throw new TimeoutException("No result message for ID " + id + " within " + unit.toMillis(timeout) + " ms.");
+			}
+			return getResult();
+		}
+
+		private Map<String, Object> getResult() throws ExecutionException {
+			if (isCancelled) {
+				throw new CancellationException("Waiting for result of ID " + id + " has been cancelled.");
+			}
+			if (failure != null) {
+				throw new ExecutionException(failure);
+			}
+			return result;
+		}
+	}
+}
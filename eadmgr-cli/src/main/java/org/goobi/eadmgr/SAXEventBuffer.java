@@ -0,0 +1,116 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records SAX content events so that they can be replayed later, possibly several times.
+ */
+class SAXEventBuffer extends DefaultHandler {
+
+	private final List<Event> events = new ArrayList<Event>();
+
+	public void replay(ContentHandler handler) throws SAXException {
+		for (Event event : events) {
+			event.send(handler);
+		}
+	}
+
+	public void clear() {
+		events.clear();
+	}
+
+	@Override
+	public void startPrefixMapping(final String prefix, final String uri) {
+		events.add(new Event() {
+			void send(ContentHandler handler) throws SAXException {
+				handler.startPrefixMapping(prefix, uri);
+			}
+		});
+	}
+
+	@Override
+	public void endPrefixMapping(final String prefix) {
+		events.add(new Event() {
+			void send(ContentHandler handler) throws SAXException {
+				handler.endPrefixMapping(prefix);
+			}
+		});
+	}
+
+	@Override
+	public void startElement(final String uri, final String localName, final String qName, Attributes attributes) {
+		// attributes objects are reused by the sender
+		final Attributes copy = new AttributesImpl(attributes);
+		events.add(new Event() {
+			void send(ContentHandler handler) throws SAXException {
+				handler.startElement(uri, localName, qName, copy);
+			}
+		});
+	}
+
+	@Override
+	public void endElement(final String uri, final String localName, final String qName) {
+		events.add(new Event() {
+			void send(ContentHandler handler) throws SAXException {
+				handler.endElement(uri, localName, qName);
+			}
+		});
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) {
+		final char[] copy = new char[length];
+		System.arraycopy(ch, start, copy, 0, length);
+		events.add(new Event() {
+			void send(ContentHandler handler) throws SAXException {
+				handler.characters(copy, 0, copy.length);
+			}
+		});
+	}
+
+	@Override
+	public void ignorableWhitespace(char[] ch, int start, int length) {
+		characters(ch, start, length);
+	}
+
+	@Override
+	public void processingInstruction(final String target, final String data) {
+		events.add(new Event() {
+			void send(ContentHandler handler) throws SAXException {
+				handler.processingInstruction(target, data);
+			}
+		});
+	}
+
+	private abstract static class Event {
+		abstract void send(ContentHandler handler) throws SAXException;
+	}
+}
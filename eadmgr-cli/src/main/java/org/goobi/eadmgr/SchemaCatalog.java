@@ -0,0 +1,84 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves schemas imported by the EAD schema to local copies on the classpath instead of downloading them.
+ * <p/>
+ * Schemas are looked up by their schema location first and by their target namespace second. Resources that are
+ * not in the catalog are left to the default resolution of the schema factory.
+ */
+class SchemaCatalog implements LSResourceResolver {
+
+	public static final String XLINK_NAMESPACE = "http://www.w3.org/1999/xlink";
+	public static final String XLINK_XSD = "xlink.xsd";
+	private static final Map<String, String> BY_LOCATION = new HashMap<String, String>();
+	private static final Map<String, String> BY_NAMESPACE = new HashMap<String, String>();
+
+	static {
+		BY_LOCATION.put("http://www.loc.gov/standards/xlink/xlink.xsd", XLINK_XSD);
+		BY_NAMESPACE.put(XLINK_NAMESPACE, XLINK_XSD);
+	}
+
+	private Logger logger = LoggerFactory.getLogger(SchemaCatalog.class);
+	private final DOMImplementationLS domImplementation;
+
+	SchemaCatalog() throws Exception {
+		domImplementation = (DOMImplementationLS) DocumentBuilderFactory.newInstance().newDocumentBuilder().getDOMImplementation();
+	}
+
+	@Override
+	public LSInput resolveResource(String type, String namespaceURI, String publicId, String systemId, String baseURI) {
+		String resource = (systemId != null) ? BY_LOCATION.get(systemId) : null;
+		if (resource == null && namespaceURI != null) {
+			resource = BY_NAMESPACE.get(namespaceURI);
+		}
+		if (resource == null) {
+			logger.warn("No local copy of {} (namespace {}), resolving it by its location", systemId, namespaceURI);
+			return null;
+		}
+
+		URL url = SchemaCatalog.class.getClassLoader().getResource(resource);
+		if (url == null) {
+			logger.warn("Schema catalog entry {} for {} not found on classpath", resource, systemId);
+			return null;
+		}
+
+		logger.trace("Resolved {} to {}", systemId, url);
+		LSInput input = domImplementation.createLSInput();
+		input.setPublicId(publicId);
+		input.setSystemId(url.toExternalForm());
+		input.setBaseURI(baseURI);
+		return input;
+	}
+}
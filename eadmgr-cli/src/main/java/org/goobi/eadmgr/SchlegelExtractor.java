@@ -0,0 +1,58 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.xml.sax.ContentHandler;
+
+import javax.xml.transform.Source;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Extracts folder data with the mapping of the built-in extraction profile <code>schlegel.xsl</code>, implemented
+ * in Java.
+ * <p/>
+ * The EAD document is read into an {@link ArchiveModel}, which holds exactly the fields the profile selects, and the
+ * model sends the <code>bundle</code> document. Folders that are not requested are skipped while reading. The SAX
+ * events, and so the serialized folders, are identical to those of the profile run by {@link XsltExtractor}, without
+ * interpreting the stylesheet or building its input tree.
+ */
+public class SchlegelExtractor implements Extractor {
+
+	/**
+	 * Name of the extraction profile this extractor implements.
+	 */
+	public static final String EXTRACTION_PROFILE = "schlegel.xsl";
+
+	@Override
+	public void extract(Source source, Collection<String> folderIds, ContentHandler handler) throws Exception {
+		Set<String> wanted = (folderIds == null) ? null : new HashSet<String>(folderIds);
+		ArchiveModel model = new ArchiveModelBuilder(wanted).build(source);
+		model.writeBundle(handler, wanted);
+	}
+
+	@Override
+	public String toString() {
+		return "native extractor for " + EXTRACTION_PROFILE;
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import javax.xml.transform.stream.StreamSource;
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Hands an EAD file to the extractor as it is, without parsing it first.
+ * <p/>
+ * Whether the file is read in bounded memory depends on the extractor, e.g. a streaming XSLT processor running a
+ * streamable extraction profile. Extracted folders are passed on one at a time in any case.
+ */
+public class SourceFolderReader implements FolderReader {
+
+	private final File eadFile;
+
+	public SourceFolderReader(File eadFile) {
+		this.eadFile = eadFile;
+	}
+
+	/**
+	 * Read the folder IDs from a compact model of the file, see {@link ArchiveModel}.
+	 */
+	@Override
+	public List<String> getFolderIds() throws Exception {
+		return ArchiveModel.read(eadFile, false).getFolderIds();
+	}
+
+	@Override
+	public void extract(Collection<String> folderIds, Extractor extractor, boolean indent, FolderHandler handler)
+			throws Exception {
+		EADDocument.extract(new StreamSource(eadFile), folderIds, extractor, indent, handler);
+	}
+
+	@Override
+	public void close() {
+		// nothing to release, the file is opened by the extractor
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Validates EAD files against a schema in a single SAX pass, without building a DOM.
+ * <p/>
+ * SAX events are fed into a {@link ValidatorHandler}, so memory usage does not depend on the size of the file.
+ * Validation errors do not stop the pass. They are collected until <code>maxErrors</code> is reached. Only errors
+ * that make the file unreadable, like malformed XML, end validation early. Warnings are logged, they neither make
+ * the file invalid nor count towards <code>maxErrors</code>.
+ * <p/>
+ * Instances are not thread safe, but can be reused for validating several files one after another.
+ */
+public class StreamingValidator {
+
+	private static Logger logger = LoggerFactory.getLogger(StreamingValidator.class);
+	private final XMLReader xmlReader;
+	private final ValidatorHandler validatorHandler;
+	private final int maxErrors;
+
+	/**
+	 * @param schema    Schema to validate against.
+	 * @param maxErrors Number of errors after which validation of a file is stopped.
+	 */
+	public StreamingValidator(Schema schema, int maxErrors) throws Exception {
+		if (maxErrors < 1) {
+			throw new IllegalArgumentException("Maximum number of errors must be at least 1.");
+		}
+		SAXParserFactory spf = SAXParserFactory.newInstance();
+		spf.setNamespaceAware(true);
+		this.xmlReader = spf.newSAXParser().getXMLReader();
+		this.validatorHandler = schema.newValidatorHandler();
+		this.maxErrors = maxErrors;
+		xmlReader.setContentHandler(validatorHandler);
+	}
+
+	/**
+	 * Validate a file.
+	 *
+	 * @param eadFile EAD file to validate.
+	 * @return Validation errors in document order. An empty list means the file is valid.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public List<SAXParseException> validate(File eadFile) throws IOException {
+		Metrics.Timer timer = Metrics.getInstance().start(Metrics.VALIDATE);
+		try {
+			CollectingErrorHandler errorHandler = new CollectingErrorHandler(maxErrors);
+			xmlReader.setErrorHandler(errorHandler);
+			validatorHandler.setErrorHandler(errorHandler);
+
+			InputStream in = new BufferedInputStream(new FileInputStream(eadFile));
+			try {
+				InputSource source = new InputSource(in);
+				source.setSystemId(eadFile.toURI().toString());
+				xmlReader.parse(source);
+			} catch (SAXException e) {
+				// errors have been collected, parsing stopped because of a fatal error or too many errors
+				if (!(e instanceof SAXParseException) && (e != errorHandler.tooManyErrors)) {
+					throw new IOException(e.getMessage(), e);
+				}
+			} finally {
+				in.close();
+			}
+			return Collections.unmodifiableList(errorHandler.getErrors());
+		} finally {
+			timer.stop();
+		}
+	}
+
+	/**
+	 * Format a validation error for reporting.
+	 *
+	 * @param e Validation error.
+	 * @return Error message with line number.
+	 */
+	public static String format(SAXParseException e) {
+		return e.getMessage() + " (at line " + e.getLineNumber() + ")";
+	}
+
+	/**
+	 * Collects errors and stops parsing once <code>maxErrors</code> have been collected. Warnings are only logged.
+	 */
+	static class CollectingErrorHandler implements ErrorHandler {
+		private final int maxErrors;
+		private final List<SAXParseException> errors = new ArrayList<SAXParseException>();
+		private final SAXException tooManyErrors = new SAXException("Too many validation errors.");
+
+		CollectingErrorHandler(int maxErrors) {
+			this.maxErrors = maxErrors;
+		}
+
+		List<SAXParseException> getErrors() {
+			return errors;
+		}
+
+		@Override
+		public void warning(SAXParseException exception) {
+			logger.warn("{}: {}", exception.getSystemId(), format(exception));
+		}
+
+		@Override
+		public void error(SAXParseException exception) throws SAXException {
+			add(exception);
+		}
+
+		@Override
+		public void fatalError(SAXParseException exception) throws SAXException {
+			errors.add(exception);
+			throw exception;
+		}
+
+		private void add(SAXParseException exception) throws SAXException {
+			errors.add(exception);
+			if (errors.size() >= maxErrors) {
+				throw tooManyErrors;
+			}
+		}
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Content hashes of the folders extracted from an EAD file, stored in a sidecar file next to it.
+ * <p/>
+ * Hashes are kept per folder ID and extraction profile, so that a later sync can tell which folders are new or
+ * have changed since they were last sent. The sidecar file holds one line per folder with the folder ID, the
+ * extraction profile name and the SHA-256 hash of the extracted XML, separated by tabs.
+ * <p/>
+ * The hash is computed over the parsed elements, attributes and text rather than the serialized bytes. Text nodes
+ * consisting of whitespace only are left out, so that indenting the extracted XML or not does not change it.
+ */
+public class SyncStore {
+
+	public static final String STORE_FILE_SUFFIX = ".eadmgr-sync";
+	private static final String FORMAT = "# eadmgr sync store 1";
+	private static final String HASH_ALGORITHM = "SHA-256";
+	private static Logger logger = LoggerFactory.getLogger(SyncStore.class);
+	private final File storeFile;
+	private final Map<String, String> hashes = new TreeMap<String, String>();
+
+	private SyncStore(File storeFile) {
+		this.storeFile = storeFile;
+	}
+
+	/**
+	 * Read the sync store of an EAD file. If there is no store yet, an empty one is returned.
+	 *
+	 * @param eadFile EAD file.
+	 * @return Sync store of the given file.
+	 */
+	public static SyncStore forFile(File eadFile) throws IOException {
+		SyncStore store = new SyncStore(getStoreFile(eadFile));
+		if (store.storeFile.isFile()) {
+			store.read();
+			logger.trace("Read {} folder hashes from {}", store.hashes.size(), store.storeFile);
+		}
+		return store;
+	}
+
+	public static File getStoreFile(File eadFile) {
+		return new File(eadFile.getAbsoluteFile().getParentFile(), eadFile.getName() + STORE_FILE_SUFFIX);
+	}
+
+	/**
+	 * @param xml Extracted folder XML.
+	 * @return Hex encoded hash of the given XML.
+	 */
+	public static String hash(byte[] xml) throws Exception {
+		SAXParserFactory spf = SAXParserFactory.newInstance();
+		spf.setNamespaceAware(true);
+		XMLReader reader = spf.newSAXParser().getXMLReader();
+		DigestHandler handler = new DigestHandler();
+		reader.setContentHandler(handler);
+		reader.setErrorHandler(new StrictErrorHandler());
+		reader.parse(new InputSource(new ByteArrayInputStream(xml)));
+
+		byte[] digest = handler.digest.digest();
+		StringBuilder sb = new StringBuilder(digest.length * 2);
+		for (byte b : digest) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param folderId          Folder ID.
+	 * @param extractionProfile Name of the extraction profile the folder has been extracted with.
+	 * @return Hash of the folder when it was last sent successfully, or <code>null</code> if it never was.
+	 */
+	public String get(String folderId, String extractionProfile) {
+		return hashes.get(key(folderId, extractionProfile));
+	}
+
+	public void put(String folderId, String extractionProfile, String hash) {
+		hashes.put(key(folderId, extractionProfile), hash);
+	}
+
+	/**
+	 * Write the store to its sidecar file.
+	 */
+	public void write() throws IOException {
+		// write to a temporary file first so that an interrupted write never loses the previous state
+		File tmp = new File(storeFile.getParentFile(), storeFile.getName() + ".tmp");
+		PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+		try {
+			pw.print(FORMAT + "\n");
+			for (Map.Entry<String, String> e : hashes.entrySet()) {
+				pw.print(e.getKey() + "\t" + e.getValue() + "\n");
+			}
+		} finally {
+			pw.close();
+		}
+		if (pw.checkError()) {
+			tmp.delete();
+			throw new IOException("Error writing " + tmp);
+		}
+		if (!tmp.renameTo(storeFile)) {
+			storeFile.delete();
+			if (!tmp.renameTo(storeFile)) {
+				tmp.delete();
+				throw new IOException("Cannot rename " + tmp + " to " + storeFile);
+			}
+		}
+	}
+
+	private void read() throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(storeFile), "UTF-8"));
+		try {
+			if (!FORMAT.equals(reader.readLine())) {
+				throw new IOException("Unknown format of sync store " + storeFile);
+			}
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] f = line.split("\t", -1);
+				if (f.length == 3) {
+					hashes.put(key(f[0], f[1]), f[2]);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static String key(String folderId, String extractionProfile) {
+		return folderId + "\t" + extractionProfile;
+	}
+
+	/**
+	 * Feeds the parsed document into a message digest, separating names and values by characters that cannot occur
+	 * in XML.
+	 */
+	private static class DigestHandler extends DefaultHandler {
+		private final MessageDigest digest;
+		private final StringBuilder text = new StringBuilder();
+
+		private DigestHandler() {
+			try {
+				digest = MessageDigest.getInstance(HASH_ALGORITHM);
+			} catch (NoSuchAlgorithmException e) {
+				// every Java platform has to support SHA-256
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			flushText();
+			update("\u0001" + uri + "\u0000" + localName);
+			for (int i = 0; i < attributes.getLength(); i++) {
+				update("\u0002" + attributes.getURI(i) + "\u0000" + attributes.getLocalName(i) + "\u0000"
+						+ attributes.getValue(i));
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			flushText();
+			update("\u0003");
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			text.append(ch, start, length);
+		}
+
+		private void flushText() {
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if ((c != ' ') && (c != '\t') && (c != '\n') && (c != '\r')) {
+					update("\u0004" + text);
+					break;
+				}
+			}
+			text.setLength(0);
+		}
+
+		private void update(String s) {
+			try {
+				digest.update(s.getBytes("UTF-8"));
+			} catch (UnsupportedEncodingException e) {
+				// every Java platform has to support UTF-8
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
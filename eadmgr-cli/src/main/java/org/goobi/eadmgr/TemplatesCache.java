@@ -0,0 +1,160 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.TransformerFactoryConfigurationError;
+import javax.xml.transform.stream.StreamSource;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache of compiled extraction profiles.
+ * <p/>
+ * Profiles are looked up on the classpath first and in the filesystem second. Compiled {@link Templates} are kept
+ * per profile and recompiled only if the modification time of the underlying file changes, so repeated extractions
+ * within one JVM pay the stylesheet compilation cost only once. Templates are thread-safe and can be shared.
+ * <p/>
+ * Profiles are compiled by the JAXP default XSLT processor unless the class name of another
+ * {@link TransformerFactory} implementation is given, e.g. of an XSLT 3.0 processor that supports streaming.
+ */
+public class TemplatesCache {
+
+	private static TemplatesCache instance;
+	private static Logger logger = LoggerFactory.getLogger(TemplatesCache.class);
+	private Map<String, CacheEntry> cache = new HashMap<String, CacheEntry>();
+	private Map<String, TransformerFactory> factories = new HashMap<String, TransformerFactory>();
+
+	private TemplatesCache() {
+	}
+
+	public static synchronized TemplatesCache getInstance() {
+		if (instance == null) {
+			instance = new TemplatesCache();
+		}
+		return instance;
+	}
+
+	/**
+	 * Get compiled templates for an extraction profile.
+	 *
+	 * @param extractionProfileFilename Name of a profile on the classpath or pathname of a profile file.
+	 * @return Compiled templates, either from cache or freshly compiled.
+	 */
+	public Templates get(String extractionProfileFilename) throws Exception {
+		return get(extractionProfileFilename, null);
+	}
+
+	/**
+	 * Get compiled templates for an extraction profile.
+	 *
+	 * @param extractionProfileFilename Name of a profile on the classpath or pathname of a profile file.
+	 * @param factoryClassName          Class name of the {@link TransformerFactory} to compile the profile with or
+	 *                                  <code>null</code> for the JAXP default.
+	 * @return Compiled templates, either from cache or freshly compiled.
+	 */
+	public synchronized Templates get(String extractionProfileFilename, String factoryClassName) throws Exception {
+		String key;
+		long lastModified;
+		URL url;
+
+		logger.trace("Try to get extraction profile file {} from classpath", extractionProfileFilename);
+		URL resource = this.getClass().getClassLoader().getResource(extractionProfileFilename);
+		if (resource != null) {
+			logger.trace("Extraction profile found on classpath");
+			key = "classpath:" + extractionProfileFilename;
+			// resources inside of jar files don't change, unpacked resources might
+			lastModified = "file".equals(resource.getProtocol()) ? new File(resource.toURI()).lastModified() : 0;
+			url = resource;
+		} else {
+			logger.trace("Extraction profile not found on classpath. Try to load from file {}", extractionProfileFilename);
+			File file = new File(extractionProfileFilename);
+			if (!file.isFile()) {
+				throw new Exception("Cannot obtain extraction profile. Neither is " + extractionProfileFilename +
+						" to be found on the classpath nor can the file be obtained from filesystem.");
+			}
+			logger.trace("Extraction profile obtained from filesystem");
+			key = "file:" + file.getAbsolutePath();
+			lastModified = file.lastModified();
+			url = file.toURI().toURL();
+		}
+
+		if (factoryClassName != null) {
+			key = factoryClassName + "|" + key;
+		}
+		CacheEntry entry = cache.get(key);
+		if ((entry != null) && (entry.lastModified == lastModified)) {
+			logger.trace("Using cached extraction profile {}", key);
+			return entry.templates;
+		}
+
+		logger.trace("Compiling extraction profile {}", key);
+		Metrics.Timer timer = Metrics.getInstance().start(Metrics.PROFILE_LOAD);
+		InputStream in = url.openStream();
+		try {
+			entry = new CacheEntry(getFactory(factoryClassName).newTemplates(new StreamSource(in, url.toExternalForm())),
+					lastModified);
+		} finally {
+			in.close();
+			timer.stop();
+		}
+		cache.put(key, entry);
+		return entry.templates;
+	}
+
+	private TransformerFactory getFactory(String factoryClassName) throws Exception {
+		String name = (factoryClassName == null) ? "" : factoryClassName;
+		TransformerFactory factory = factories.get(name);
+		if (factory == null) {
+			if (factoryClassName == null) {
+				factory = TransformerFactory.newInstance();
+			} else {
+				try {
+					factory = TransformerFactory.newInstance(factoryClassName, getClass().getClassLoader());
+				} catch (TransformerFactoryConfigurationError e) {
+					throw new Exception("Cannot create XSLT processor " + factoryClassName + ". Is it on the classpath?", e);
+				}
+			}
+			logger.debug("Using XSLT processor {}", factory.getClass().getName());
+			factories.put(name, factory);
+		}
+		return factory;
+	}
+
+	private static class CacheEntry {
+		private final Templates templates;
+		private final long lastModified;
+
+		private CacheEntry(Templates templates, long lastModified) {
+			this.templates = templates;
+			this.lastModified = lastModified;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Applies the rule all {@link FolderReader} implementations share for folder IDs: a folder without an ID is skipped,
+ * and if an ID occurs more than once only the first folder is used. Every skipped folder is logged as a warning.
+ */
+class UniqueFolderIds {
+
+	private static Logger logger = LoggerFactory.getLogger(UniqueFolderIds.class);
+	private final Set<String> ids = new LinkedHashSet<String>();
+
+	/**
+	 * @param id ID of the next folder in document order, <code>null</code> or empty if the folder has no ID.
+	 * @return <code>true</code> if the folder is to be used, <code>false</code> if it has to be skipped.
+	 */
+	public boolean add(String id) {
+		if ((id == null) || id.isEmpty()) {
+			logger.warn("Skipping folder without ID");
+			return false;
+		}
+		if (!ids.add(id)) {
+			logger.warn("Skipping folder {}, its ID is used by an earlier folder", id);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return IDs of the folders used so far, in document order.
+	 */
+	public List<String> getIds() {
+		return new ArrayList<String>(ids);
+	}
+}
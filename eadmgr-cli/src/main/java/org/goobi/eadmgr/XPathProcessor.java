@@ -29,24 +29,28 @@ import javax.xml.namespace.QName;
 import javax.xml.xpath.*;
 import java.util.HashMap;
 import java.util.Iterator;
-
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Evaluates XPath expressions with variables and namespace prefixes.
+ * <p/>
+ * Compiled expressions are cached per thread, keyed by the expression and the declared namespaces, so that the same
+ * query evaluated by many processor instances is parsed only once. Cached expressions resolve variables and
+ * namespace prefixes through the processor that evaluates them.
+ */
 public class XPathProcessor {
 
-	private XPath xpath;
+	private static final ThreadLocal<Compiler> compilers = new ThreadLocal<Compiler>() {
+		@Override
+		protected Compiler initialValue() {
+			return new Compiler();
+		}
+	};
+	private final Map<QName, Object> variables = new HashMap<QName, Object>();
+	private final Map<String, String> namespaces = new HashMap<String, String>();
 	private Node node;
-	private VariableResolver vresolver;
-	private NSContext nscontext;
-
-	public XPathProcessor() {
-		vresolver = new VariableResolver();
-		nscontext = new NSContext();
-
-		XPathFactory xpf = XPathFactory.newInstance();
-		xpf.setXPathVariableResolver(vresolver);
-
-		this.xpath = xpf.newXPath();
-		this.xpath.setNamespaceContext(nscontext);
-	}
 
 	public void setQueryNode(Node n) {
 		this.node = n;
@@ -54,14 +58,14 @@ public class XPathProcessor {
 
 	public void setVariable(String name, Object value) {
 		if (value == null) {
-			vresolver.remove(new QName(name));
+			variables.remove(new QName(name));
 		} else {
-			vresolver.put(new QName(name), value);
+			variables.put(new QName(name), value);
 		}
 	}
 
 	public void declareNamespace(String prefix, String uri) {
-		nscontext.put(prefix, uri);
+		namespaces.put(prefix, uri);
 	}
 
 	public Node query(String expr) throws XPathExpressionException {
@@ -69,36 +73,75 @@ public class XPathProcessor {
 	}
 
 	public Node query(String expr, Node n) throws XPathExpressionException {
-		XPathExpression xpe = this.xpath.compile(expr);
-		return (Node) xpe.evaluate(n, XPathConstants.NODE);
+		return (Node) evaluate(expr, n, XPathConstants.NODE);
 	}
 
 	public NodeList queryList(String expr, Node n) throws XPathExpressionException {
-		XPathExpression xpe = this.xpath.compile(expr);
-		return (NodeList) xpe.evaluate(n, XPathConstants.NODESET);
+		return (NodeList) evaluate(expr, n, XPathConstants.NODESET);
 	}
 
-	private class VariableResolver extends HashMap implements XPathVariableResolver {
-		@Override
-		public Object resolveVariable(QName variableName) {
-			return this.get(variableName);
+	private Object evaluate(String expr, Node n, QName returnType) throws XPathExpressionException {
+		Compiler compiler = compilers.get();
+		XPathProcessor previous = compiler.current;
+		compiler.current = this;
+		try {
+			return compiler.compile(expr, namespaces).evaluate(n, returnType);
+		} finally {
+			compiler.current = previous;
 		}
 	}
 
-	private class NSContext extends HashMap<String, String> implements NamespaceContext {
-		@Override
-		public String getNamespaceURI(String prefix) {
-			return this.get(prefix);
+	/**
+	 * Compiles and caches expressions for one thread. Variables and namespace prefixes are looked up in the
+	 * processor currently evaluating an expression.
+	 */
+	private static class Compiler {
+		private static final int MAX_CACHED_EXPRESSIONS = 256;
+		private XPathProcessor current;
+		private final XPath xpath;
+		private final Map<String, XPathExpression> cache = new LinkedHashMap<String, XPathExpression>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+				return size() > MAX_CACHED_EXPRESSIONS;
+			}
+		};
+
+		private Compiler() {
+			XPathFactory xpf = XPathFactory.newInstance();
+			xpath = xpf.newXPath();
+			xpath.setXPathVariableResolver(new XPathVariableResolver() {
+				@Override
+				public Object resolveVariable(QName variableName) {
+					return (current == null) ? null : current.variables.get(variableName);
+				}
+			});
+			xpath.setNamespaceContext(new NamespaceContext() {
+				@Override
+				public String getNamespaceURI(String prefix) {
+					return (current == null) ? null : current.namespaces.get(prefix);
+				}
+
+				@Override
+				public String getPrefix(String namespaceURI) {
+					return null;
+				}
+
+				@Override
+				public Iterator<String> getPrefixes(String namespaceURI) {
+					return null;
+				}
+			});
 		}
 
-		@Override
-		public String getPrefix(String namespaceURI) {
-			return null;
-		}
-
-		@Override
-		public Iterator getPrefixes(String namespaceURI) {
-			return null;
+		private XPathExpression compile(String expr, Map<String, String> namespaces) throws XPathExpressionException {
+			// prefixes are bound at compile time, so the same expression with other namespaces is another entry
+			String key = namespaces.isEmpty() ? expr : expr + '\n' + new TreeMap<String, String>(namespaces);
+			XPathExpression xpe = cache.get(key);
+			if (xpe == null) {
+				xpe = xpath.compile(expr);
+				cache.put(key, xpe);
+			}
+			return xpe;
 		}
 	}
 
@@ -0,0 +1,89 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import org.xml.sax.ContentHandler;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.sax.SAXResult;
+import java.util.Collection;
+
+/**
+ * Extracts folder data by running an XSLT extraction profile.
+ * <p/>
+ * When a single folder is requested, its ID is passed to the profile as parameter
+ * {@link #FOLDER_ID_PARAMETER}, so profiles that honor it can skip all other folders.
+ */
+public class XsltExtractor implements Extractor {
+
+	/**
+	 * Name of the stylesheet parameter set to the folder ID when a single folder is extracted. Profiles may use it
+	 * to transform only that folder.
+	 */
+	public static final String FOLDER_ID_PARAMETER = "folder_id";
+	private final Templates extractionProfile;
+	private final String name;
+
+	/**
+	 * @param extractionProfile Compiled extraction profile.
+	 * @param name              Name of the profile for log messages.
+	 */
+	public XsltExtractor(Templates extractionProfile, String name) {
+		this.extractionProfile = extractionProfile;
+		this.name = name;
+	}
+
+	/**
+	 * @param extractionProfileFilename Name of the extraction profile on the classpath or in the filesystem.
+	 * @return Extractor for the compiled profile from {@link TemplatesCache}.
+	 */
+	public static XsltExtractor forProfile(String extractionProfileFilename) throws Exception {
+		return forProfile(extractionProfileFilename, null);
+	}
+
+	/**
+	 * @param extractionProfileFilename Name of the extraction profile on the classpath or in the filesystem.
+	 * @param factoryClassName          Class name of the XSLT processor's {@link javax.xml.transform.TransformerFactory}
+	 *                                  or <code>null</code> for the JAXP default.
+	 * @return Extractor for the compiled profile from {@link TemplatesCache}.
+	 */
+	public static XsltExtractor forProfile(String extractionProfileFilename, String factoryClassName) throws Exception {
+		return new XsltExtractor(TemplatesCache.getInstance().get(extractionProfileFilename, factoryClassName),
+				extractionProfileFilename);
+	}
+
+	@Override
+	public void extract(Source source, Collection<String> folderIds, ContentHandler handler) throws Exception {
+		Transformer transformer = extractionProfile.newTransformer();
+		if ((folderIds != null) && (folderIds.size() == 1)) {
+			transformer.setParameter(FOLDER_ID_PARAMETER, folderIds.iterator().next());
+		}
+		transformer.transform(source, new SAXResult(handler));
+	}
+
+	@Override
+	public String toString() {
+		return "extraction profile " + name;
+	}
+}
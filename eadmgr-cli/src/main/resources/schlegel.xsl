@@ -25,6 +25,9 @@
 
     <xsl:output encoding="UTF8" method="xml" indent="yes"/>
 
+    <!-- ID of the only folder to extract. All folders are extracted if empty. -->
+    <xsl:param name="folder_id" select="''"/>
+
 
     <xsl:template match="//ead:archdesc">
         <xsl:element name="bundle">
@@ -45,7 +48,8 @@
             </xsl:element>
 
             <xsl:element name="folders">
-                <xsl:apply-templates select="ead:dsc/ead:c[attribute::level='class']"/>
+                <xsl:apply-templates
+                        select="ead:dsc/ead:c[attribute::level='class'][$folder_id = '' or @id = $folder_id]"/>
             </xsl:element>
         </xsl:element>
     </xsl:template>
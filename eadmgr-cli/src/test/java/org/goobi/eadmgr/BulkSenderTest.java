@@ -0,0 +1,175 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import junit.framework.TestCase;
+import org.apache.activemq.ActiveMQConnectionFactory;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that {@link BulkSender} never has more than <code>window</code> messages waiting for their result, and how
+ * it reports results that arrive too late. Runs against an embedded, non-persistent broker, with the test answering
+ * in place of Goobi.
+ */
+public class BulkSenderTest extends TestCase {
+
+	private static final String BROKER_URL = "vm://eadmgr-bulk-test?broker.persistent=false&broker.useJmx=false";
+	private static final String SUBJECT_QUEUE = "eadmgr.test.Queue";
+	private static final String RESULT_TOPIC = "eadmgr.test.Topic";
+	private static final long WAIT = 10000;
+
+	private Connection goobi;
+	private Session goobiSession;
+	private MessageProducer resultProducer;
+	private BlockingQueue<String> received = new LinkedBlockingQueue<String>();
+	private GoobiMQConnection connection;
+
+	@Override
+	protected void setUp() throws Exception {
+		goobi = new ActiveMQConnectionFactory(BROKER_URL).createConnection();
+		goobiSession = goobi.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		resultProducer = goobiSession.createProducer(goobiSession.createTopic(RESULT_TOPIC));
+		goobiSession.createConsumer(goobiSession.createQueue(SUBJECT_QUEUE)).setMessageListener(new MessageListener() {
+			@Override
+			public void onMessage(Message message) {
+				try {
+					received.add(((MapMessage) message).getString(ResultDispatcher.ID_FIELD));
+				} catch (JMSException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		goobi.start();
+		connection = new GoobiMQConnection(BROKER_URL, SUBJECT_QUEUE, RESULT_TOPIC);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		connection.close();
+		goobi.close();
+	}
+
+	public void testWindowLimitsMessagesInFlight() throws Exception {
+		Submitter submitter = new Submitter(new BulkSender(connection, 2, 0), "F1", "F2", "F3", "F4", "F5");
+		submitter.start();
+
+		assertEquals("F1", received.poll(WAIT, TimeUnit.MILLISECONDS));
+		assertEquals("F2", received.poll(WAIT, TimeUnit.MILLISECONDS));
+		assertNull("window of 2 exceeded", received.poll(200, TimeUnit.MILLISECONDS));
+
+		// the oldest message is waited for first, so a result out of order frees its slot only with the older one
+		answer("F2", "success");
+		assertNull("window of 2 exceeded", received.poll(200, TimeUnit.MILLISECONDS));
+		answer("F1", "success");
+		assertEquals("F3", received.poll(WAIT, TimeUnit.MILLISECONDS));
+		assertEquals("F4", received.poll(WAIT, TimeUnit.MILLISECONDS));
+		assertNull("window of 2 exceeded", received.poll(200, TimeUnit.MILLISECONDS));
+		answer("F3", "error");
+		assertEquals("F5", received.poll(WAIT, TimeUnit.MILLISECONDS));
+		answer("F4", "success");
+		answer("F5", "success");
+
+		List<BulkSender.Result> results = submitter.await();
+		assertEquals(5, results.size());
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals("F" + (i + 1), results.get(i).getFolderId());
+			assertEquals(results.get(i).getFolderId(), i != 2, results.get(i).isSuccess());
+		}
+	}
+
+	public void testLateResultIsReportedAsTimeout() throws Exception {
+		Submitter submitter = new Submitter(new BulkSender(connection, 1, 100), "F1", "F2");
+		submitter.start();
+
+		assertEquals("F1", received.poll(WAIT, TimeUnit.MILLISECONDS));
+		// no answer for F1, so F2 is sent after the timeout
+		assertEquals("F2", received.poll(WAIT, TimeUnit.MILLISECONDS));
+		answer("F1", "success");
+		answer("F2", "success");
+
+		List<BulkSender.Result> results = submitter.await();
+		assertEquals(2, results.size());
+		assertFalse(results.get(0).isSuccess());
+		assertTrue(results.get(0).getMessage().contains("F1"));
+		assertTrue(results.get(1).isSuccess());
+	}
+
+	private void answer(String id, String level) throws Exception {
+		MapMessage result = goobiSession.createMapMessage();
+		result.setString(ResultDispatcher.ID_FIELD, id);
+		result.setString("level", level);
+		result.setString("message", "Answer for " + id);
+		resultProducer.send(result);
+	}
+
+	/**
+	 * Submits messages from a thread of its own, as submitting blocks while the window is full.
+	 */
+	private static class Submitter extends Thread {
+		private final BulkSender sender;
+		private final String[] ids;
+		private List<BulkSender.Result> results;
+		private Exception failure;
+
+		private Submitter(BulkSender sender, String... ids) {
+			this.sender = sender;
+			this.ids = ids;
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (String id : ids) {
+					Map<String, Object> message = new HashMap<String, Object>();
+					message.put(ResultDispatcher.ID_FIELD, id);
+					sender.submit(id, message);
+				}
+				results = new ArrayList<BulkSender.Result>(sender.finish());
+			} catch (Exception e) {
+				failure = e;
+			}
+		}
+
+		private List<BulkSender.Result> await() throws Exception {
+			join(WAIT);
+			if (failure != null) {
+				throw failure;
+			}
+			assertNotNull("submitting has not finished", results);
+			return results;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import junit.framework.TestCase;
+
+import javax.xml.transform.stream.StreamSource;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that {@link SchlegelExtractor} produces exactly the folder data of the extraction profile it implements, run
+ * by {@link XsltExtractor}, on EAD documents with the edge cases the mapping has to get right.
+ */
+public class ExtractorConformanceTest extends TestCase {
+
+	private static final String[] FIXTURES = {
+			"conformance-mixed-content.xml",
+			"conformance-names.xml",
+			"conformance-structure.xml"
+	};
+
+	private Extractor xsltExtractor;
+	private Extractor schlegelExtractor;
+
+	@Override
+	protected void setUp() throws Exception {
+		xsltExtractor = XsltExtractor.forProfile(SchlegelExtractor.EXTRACTION_PROFILE);
+		schlegelExtractor = new SchlegelExtractor();
+	}
+
+	public void testAllFoldersOfParsedDocument() throws Exception {
+		for (String fixture : FIXTURES) {
+			EADDocument ead = read(fixture);
+			for (boolean indent : new boolean[]{true, false}) {
+				assertSameFolders(fixture,
+						ead.extractFolderData((Collection<String>) null, xsltExtractor, indent),
+						ead.extractFolderData((Collection<String>) null, schlegelExtractor, indent));
+			}
+		}
+	}
+
+	public void testAllFoldersOfStream() throws Exception {
+		for (String fixture : FIXTURES) {
+			assertSameFolders(fixture,
+					EADDocument.extract(new StreamSource(getFixture(fixture)), null, xsltExtractor, true),
+					EADDocument.extract(new StreamSource(getFixture(fixture)), null, schlegelExtractor, true));
+		}
+	}
+
+	public void testSingleFolders() throws Exception {
+		for (String fixture : FIXTURES) {
+			EADDocument ead = read(fixture);
+			for (String folderId : ead.getFolderIds()) {
+				assertEquals(fixture + ", folder " + folderId,
+						toString(ead.extractFolderData(folderId, xsltExtractor, true)),
+						toString(ead.extractFolderData(folderId, schlegelExtractor, true)));
+			}
+		}
+	}
+
+	public void testSeveralFolders() throws Exception {
+		for (String fixture : FIXTURES) {
+			EADDocument ead = read(fixture);
+			List<String> folderIds = new ArrayList<String>(ead.getFolderIds());
+			Collections.reverse(folderIds);
+			assertSameFolders(fixture,
+					ead.extractFolderData(folderIds, xsltExtractor, true),
+					ead.extractFolderData(folderIds, schlegelExtractor, true));
+		}
+	}
+
+	private void assertSameFolders(String fixture, Map<String, byte[]> expected, Map<String, byte[]> actual)
+			throws Exception {
+		assertFalse(fixture + " yields no folders", expected.isEmpty());
+		assertEquals(fixture, new ArrayList<String>(expected.keySet()), new ArrayList<String>(actual.keySet()));
+		for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+			assertEquals(fixture + ", folder " + e.getKey(), toString(e.getValue()), toString(actual.get(e.getKey())));
+		}
+	}
+
+	private EADDocument read(String fixture) throws Exception {
+		EADDocument ead = new EADDocument();
+		ead.readEadFile(getFixture(fixture), false);
+		return ead;
+	}
+
+	private File getFixture(String fixture) throws Exception {
+		return new File(getClass().getResource(fixture).toURI());
+	}
+
+	private static String toString(byte[] xml) throws Exception {
+		return (xml == null) ? null : new String(xml, "UTF-8");
+	}
+}
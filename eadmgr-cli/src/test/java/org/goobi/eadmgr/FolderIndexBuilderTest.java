@@ -0,0 +1,176 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Checks that the byte tokenizer of {@link FolderIndexBuilder} finds the folders and their exact byte ranges, and is
+ * not misled by markup in comments, processing instructions, CDATA sections or attribute values.
+ */
+public class FolderIndexBuilderTest extends TestCase {
+
+	private static final String HEAD = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<ead xmlns=\"urn:isbn:1-931666-22-9\"><archdesc level=\"collection\" id=\"A\">"
+			+ "<did><unittitle>Bestand äöü</unittitle></did><dsc>";
+	private static final String TAIL = "</dsc></archdesc></ead>";
+
+	private byte[] bytes;
+
+	public void testFolderOffsets() throws Exception {
+		String f1 = "<c level=\"class\" id=\"F1\"><did><unittitle>Mappe ä</unittitle></did></c>";
+		String f2 = "<c level=\"class\" id=\"F2\"/>";
+		FolderIndex index = build(HEAD + f1 + "\n<c level=\"item\" id=\"I1\"/>" + f2 + TAIL);
+
+		assertEquals(Arrays.asList("F1", "F2"), index.getFolderIds());
+		assertEquals(f1, getBytes(index.getFolder("F1")));
+		assertEquals(f2, getBytes(index.getFolder("F2")));
+		assertEquals("Mappe ä", index.getFolder("F1").getTitle());
+		assertNull(index.getFolder("F2").getTitle());
+	}
+
+	public void testComments() throws Exception {
+		FolderIndex index = build(HEAD
+				+ "<!-- <c level=\"class\" id=\"X1\"> - > -->"
+				+ "<c level=\"class\" id=\"F1\"><did><unittitle>Mappe <!-- Kommentar --> 1</unittitle></did></c>"
+				+ "<!--<c level=\"class\" id=\"X2\"/>-->"
+				+ TAIL);
+
+		assertEquals(Collections.singletonList("F1"), index.getFolderIds());
+		assertEquals("Mappe 1", index.getFolder("F1").getTitle());
+	}
+
+	public void testProcessingInstructions() throws Exception {
+		FolderIndex index = build(HEAD
+				+ "<?marker <c level=\"class\" id=\"X1\"> ?>"
+				+ "<c level=\"class\" id=\"F1\"><?marker ?><did><unittitle>Mappe<?marker > ?> 1</unittitle></did></c>"
+				+ TAIL);
+
+		assertEquals(Collections.singletonList("F1"), index.getFolderIds());
+		assertEquals("Mappe 1", index.getFolder("F1").getTitle());
+	}
+
+	public void testCdataSections() throws Exception {
+		String f1 = "<c level=\"class\" id=\"F1\"><did><unittitle>Mappe <![CDATA[<c> & ]]]]>&gt;</unittitle></did>"
+				+ "<note><p><![CDATA[</c><c level=\"class\" id=\"X1\">]]></p></note></c>";
+		FolderIndex index = build(HEAD + f1 + TAIL);
+
+		assertEquals(Collections.singletonList("F1"), index.getFolderIds());
+		assertEquals(f1, getBytes(index.getFolder("F1")));
+		assertEquals("Mappe <c> & ]]>", index.getFolder("F1").getTitle());
+	}
+
+	public void testAttributeQuoting() throws Exception {
+		String f1 = "<c otherlevel='a > b' level='class' id = 'F1'><did><unittitle>Mappe 1</unittitle></did></c>";
+		String f2 = "<c\n\tlevel=\"class\"\n\taltrender='sagt \"&lt;c&gt;\"'\n\tid=\"F&#50;\"/>";
+		String f3 = "<c audience=\"/>\" level=\"class\" id=\"F3\"></c>";
+		FolderIndex index = build(HEAD + f1 + f2 + f3 + TAIL);
+
+		assertEquals(Arrays.asList("F1", "F2", "F3"), index.getFolderIds());
+		assertEquals(f1, getBytes(index.getFolder("F1")));
+		assertEquals(f2, getBytes(index.getFolder("F2")));
+		assertEquals(f3, getBytes(index.getFolder("F3")));
+	}
+
+	public void testEntitiesInTitle() throws Exception {
+		FolderIndex index = build(HEAD
+				+ "<c level=\"class\" id=\"F1\"><did><unittitle>A &amp; B &#228;&#xFC;  &lt;\n C&gt;</unittitle>"
+				+ "<unittitle>Zweiter Titel</unittitle></did></c>"
+				+ TAIL);
+
+		assertEquals("A & B äü < C>", index.getFolder("F1").getTitle());
+	}
+
+	public void testNamespaces() throws Exception {
+		FolderIndex index = build("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<e:ead xmlns:e=\"urn:isbn:1-931666-22-9\" xmlns:x=\"urn:example:other\">"
+				+ "<e:archdesc level=\"collection\"><e:dsc>"
+				+ "<e:c level=\"class\" id=\"F1\"/>"
+				+ "<x:c level=\"class\" id=\"X1\"/>"
+				+ "<c level=\"class\" id=\"X2\"/>"
+				+ "<c xmlns=\"urn:isbn:1-931666-22-9\" level=\"class\" id=\"F2\"><c level=\"class\" id=\"X3\"/></c>"
+				+ "<e:c xmlns:e=\"urn:example:other\" level=\"class\" id=\"X4\"/>"
+				+ "<e:c level=\"class\" x:id=\"X5\"/>"
+				+ "</e:dsc></e:archdesc></e:ead>");
+
+		assertEquals(Arrays.asList("F1", "F2"), index.getFolderIds());
+		// the folder without ID is indexed, but not listed
+		assertEquals(3, index.getFolders().size());
+		assertEquals("", index.getFolders().get(2).getId());
+	}
+
+	public void testFragmentOfFolders() throws Exception {
+		File eadFile = write(HEAD + "<c level=\"class\" id=\"F1\"/><c level=\"class\" id=\"F2\"/>" + TAIL);
+		try {
+			FolderIndex index = new FolderIndexBuilder().build(eadFile);
+			String fragment = new String(index.readFragment(eadFile, Arrays.asList(index.getFolder("F2"))), "UTF-8");
+			assertEquals(HEAD + "<c level=\"class\" id=\"F2\"/>" + TAIL, fragment);
+		} finally {
+			eadFile.delete();
+		}
+	}
+
+	public void testMalformedFileIsRejected() throws Exception {
+		for (String xml : new String[]{
+				HEAD + "<c level=\"class\" id=\"F1\">" + TAIL,
+				HEAD + "<c level=\"class\" id=\"F1\"",
+				HEAD + "<c level=\"class\" id=\"F1\"/><!-- " + TAIL}) {
+			try {
+				build(xml);
+				fail("Malformed file indexed: " + xml);
+			} catch (Exception e) {
+				// expected
+			}
+		}
+	}
+
+	private FolderIndex build(String xml) throws Exception {
+		File eadFile = write(xml);
+		try {
+			return new FolderIndexBuilder().build(eadFile);
+		} finally {
+			eadFile.delete();
+		}
+	}
+
+	private File write(String xml) throws Exception {
+		bytes = xml.getBytes("UTF-8");
+		File eadFile = File.createTempFile("eadmgr-index-test", ".xml");
+		OutputStream out = new FileOutputStream(eadFile);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+		return eadFile;
+	}
+
+	private String getBytes(FolderIndex.Entry entry) throws Exception {
+		return new String(bytes, (int) entry.getStart(), (int) (entry.getEnd() - entry.getStart()), "UTF-8");
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Checks when {@link FolderIndex} writes its sidecar file.
+ */
+public class FolderIndexTest extends TestCase {
+
+	private File dir;
+	private File eadFile;
+	private File indexFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("eadmgr-index-test", "");
+		dir.delete();
+		dir.mkdir();
+		eadFile = new File(dir, "ead.xml");
+		indexFile = FolderIndex.getIndexFile(eadFile);
+		write("F1");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	public void testNoSidecarUnlessAskedFor() throws Exception {
+		assertEquals(Arrays.asList("F1"), FolderIndex.forFile(eadFile, false).getFolderIds());
+		assertFalse(indexFile.exists());
+		assertEquals(Arrays.asList("F1"), FolderIndex.forFile(eadFile, true).getFolderIds());
+		assertTrue(indexFile.isFile());
+	}
+
+	public void testSidecarIsUsed() throws Exception {
+		FolderIndex.forFile(eadFile, true);
+		long lastModified = indexFile.lastModified();
+		assertEquals(Arrays.asList("F1"), FolderIndex.forFile(eadFile, false).getFolderIds());
+		assertEquals(lastModified, indexFile.lastModified());
+	}
+
+	public void testOutdatedSidecarIsRefreshed() throws Exception {
+		FolderIndex.forFile(eadFile, true);
+		write("F1", "F2");
+		eadFile.setLastModified(eadFile.lastModified() + 2000);
+
+		assertEquals(Arrays.asList("F1", "F2"), FolderIndex.forFile(eadFile, false).getFolderIds());
+		assertTrue(read(indexFile).contains("\tF2\t"));
+		assertEquals("no temporary file left", 2, dir.listFiles().length);
+	}
+
+	private String read(File file) throws Exception {
+		byte[] bytes = new byte[(int) file.length()];
+		InputStream in = new FileInputStream(file);
+		try {
+			int n = 0;
+			while (n < bytes.length) {
+				n += in.read(bytes, n, bytes.length - n);
+			}
+		} finally {
+			in.close();
+		}
+		return new String(bytes, "UTF-8");
+	}
+
+	private void write(String... folderIds) throws Exception {
+		StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<ead xmlns=\"urn:isbn:1-931666-22-9\"><archdesc level=\"collection\"><dsc>");
+		for (String folderId : folderIds) {
+			xml.append("<c level=\"class\" id=\"").append(folderId).append("\"/>");
+		}
+		xml.append("</dsc></archdesc></ead>");
+		OutputStream out = new FileOutputStream(eadFile);
+		try {
+			out.write(xml.toString().getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+}
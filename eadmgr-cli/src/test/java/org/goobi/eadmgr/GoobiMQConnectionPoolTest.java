@@ -0,0 +1,132 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import junit.framework.TestCase;
+import org.apache.activemq.ActiveMQConnectionFactory;
+
+import javax.jms.Connection;
+import javax.jms.MapMessage;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that returning a connection to {@link GoobiMQConnectionPool} withdraws its requests still waiting for a
+ * result from the shared result subscription, and only those. Runs against an embedded, non-persistent broker.
+ */
+public class GoobiMQConnectionPoolTest extends TestCase {
+
+	private static final String BROKER_URL = "vm://eadmgr-pool-test?broker.persistent=false&broker.useJmx=false";
+	private static final String SUBJECT_QUEUE = "eadmgr.test.Queue";
+	private static final String RESULT_TOPIC = "eadmgr.test.Topic";
+
+	private GoobiMQConnectionPool pool;
+	private Connection goobi;
+	private Session goobiSession;
+	private MessageProducer resultProducer;
+
+	@Override
+	protected void setUp() throws Exception {
+		// stands in for Goobi, keeps the embedded broker running while the pool reconnects
+		goobi = new ActiveMQConnectionFactory(BROKER_URL).createConnection();
+		goobi.start();
+		goobiSession = goobi.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		resultProducer = goobiSession.createProducer(goobiSession.createTopic(RESULT_TOPIC));
+		pool = GoobiMQConnectionPool.getInstance(BROKER_URL);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		GoobiMQConnectionPool.closeAll();
+		goobi.close();
+	}
+
+	public void testReturnCancelsPendingRequests() throws Exception {
+		GoobiMQConnection conn = pool.borrow(SUBJECT_QUEUE, RESULT_TOPIC);
+		Future<Map<String, Object>> a = conn.sendAsync(message("A"));
+		conn.close();
+
+		assertTrue(a.isCancelled());
+		try {
+			a.get(0, TimeUnit.MILLISECONDS);
+			fail("Cancelled request has a result.");
+		} catch (CancellationException e) {
+			// expected
+		}
+
+		// the ID is free again for the next borrower, which receives the next result
+		conn = pool.borrow(SUBJECT_QUEUE, RESULT_TOPIC);
+		try {
+			Future<Map<String, Object>> again = conn.sendAsync(message("A"));
+			sendResult("A");
+			assertEquals("A", again.get(10, TimeUnit.SECONDS).get(ResultDispatcher.ID_FIELD));
+		} finally {
+			conn.close();
+		}
+	}
+
+	public void testReturnKeepsRequestsOfOtherBorrowers() throws Exception {
+		GoobiMQConnection first = pool.borrow(SUBJECT_QUEUE, RESULT_TOPIC);
+		GoobiMQConnection second = pool.borrow(SUBJECT_QUEUE, RESULT_TOPIC);
+		try {
+			Future<Map<String, Object>> a = first.sendAsync(message("A"));
+			Future<Map<String, Object>> b = second.sendAsync(message("B"));
+			first.close();
+
+			assertTrue(a.isCancelled());
+			assertFalse(b.isDone());
+			sendResult("B");
+			assertEquals("B", b.get(10, TimeUnit.SECONDS).get(ResultDispatcher.ID_FIELD));
+		} finally {
+			second.close();
+		}
+	}
+
+	public void testReturnKeepsReceivedResults() throws Exception {
+		GoobiMQConnection conn = pool.borrow(SUBJECT_QUEUE, RESULT_TOPIC);
+		Future<Map<String, Object>> a = conn.sendAsync(message("A"));
+		sendResult("A");
+		assertEquals("A", a.get(10, TimeUnit.SECONDS).get(ResultDispatcher.ID_FIELD));
+		conn.close();
+
+		assertFalse(a.isCancelled());
+		assertEquals("A", a.get().get(ResultDispatcher.ID_FIELD));
+	}
+
+	private Map<String, Object> message(String id) {
+		Map<String, Object> message = new HashMap<String, Object>();
+		message.put(ResultDispatcher.ID_FIELD, id);
+		return message;
+	}
+
+	private void sendResult(String id) throws Exception {
+		MapMessage result = goobiSession.createMapMessage();
+		result.setString(ResultDispatcher.ID_FIELD, id);
+		result.setString("result", "success");
+		resultProducer.send(result);
+	}
+}
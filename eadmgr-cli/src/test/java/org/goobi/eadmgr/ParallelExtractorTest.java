@@ -0,0 +1,113 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import junit.framework.TestCase;
+import org.xml.sax.ContentHandler;
+
+import javax.xml.transform.Source;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ParallelExtractorTest extends TestCase {
+
+	private File eadFile;
+	private FolderIndex index;
+	private Extractor extractor;
+
+	@Override
+	protected void setUp() throws Exception {
+		eadFile = new File(getClass().getResource("duplicate-ids.xml").toURI());
+		index = new FolderIndexBuilder().build(eadFile);
+		extractor = XsltExtractor.forProfile(SchlegelExtractor.EXTRACTION_PROFILE);
+	}
+
+	public void testFolderWithDuplicateIdIsExtractedOnce() throws Exception {
+		Map<String, byte[]> expected = read().extractFolderData((Collection<String>) null, extractor, true);
+		assertTrue(new String(expected.get("D1"), "UTF-8").contains("Erste Mappe D1"));
+
+		for (int threads = 1; threads <= 2; threads++) {
+			for (int chunkSize = 1; chunkSize <= 3; chunkSize++) {
+				Collector collector = new Collector();
+				new ParallelExtractor(eadFile, index, threads, chunkSize).extract(null, extractor, true, collector);
+
+				String context = threads + " threads, chunks of " + chunkSize;
+				assertEquals(context, Arrays.asList("D1", "D2", "D3"), collector.ids);
+				for (String id : collector.ids) {
+					assertEquals(context + ", folder " + id, new String(expected.get(id), "UTF-8"),
+							new String(collector.folders.get(id), "UTF-8"));
+				}
+			}
+		}
+	}
+
+	public void testDuplicateRequestedIdsAreExtractedOnce() throws Exception {
+		Collector collector = new Collector();
+		new ParallelExtractor(eadFile, index, 2, 1).extract(Arrays.asList("D3", "D1", "D3"), extractor, true,
+				collector);
+		assertEquals(Arrays.asList("D3", "D1"), collector.ids);
+	}
+
+	public void testMissingFoldersAreLeftOut() throws Exception {
+		Collector collector = new Collector();
+		new ParallelExtractor(eadFile, index, 1, 2).extract(Arrays.asList("D2", "unknown"), extractor, true,
+				collector);
+		assertEquals(Arrays.asList("D2"), collector.ids);
+	}
+
+	public void testFolderWithoutDataIsLeftOut() throws Exception {
+		// an extractor that yields nothing for some folders must not produce null folders
+		final Extractor onlyD3 = new Extractor() {
+			@Override
+			public void extract(Source source, Collection<String> folderIds, ContentHandler handler)
+					throws Exception {
+				extractor.extract(source, Arrays.asList("D3"), handler);
+			}
+		};
+		Collector collector = new Collector();
+		new ParallelExtractor(eadFile, index, 1, 3).extract(null, onlyD3, true, collector);
+		assertEquals(Arrays.asList("D3"), collector.ids);
+	}
+
+	private EADDocument read() throws Exception {
+		EADDocument ead = new EADDocument();
+		ead.readEadFile(eadFile, false);
+		return ead;
+	}
+
+	private static class Collector implements FolderHandler {
+		private final List<String> ids = new ArrayList<String>();
+		private final Map<String, byte[]> folders = new LinkedHashMap<String, byte[]>();
+
+		@Override
+		public void folder(String folderId, byte[] xml) {
+			assertNotNull(folderId, xml);
+			ids.add(folderId);
+			folders.put(folderId, xml);
+		}
+	}
+}
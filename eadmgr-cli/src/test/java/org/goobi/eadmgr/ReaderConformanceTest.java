@@ -0,0 +1,137 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that every {@link FolderReader} lists and extracts the same folders as the parsed document does, including
+ * folders without ID, folders sharing an ID and folders on other levels than <code>class</code>.
+ */
+public class ReaderConformanceTest extends TestCase {
+
+	private static final String[] FIXTURES = {
+			"reader-edge-cases.xml",
+			"duplicate-ids.xml",
+			"conformance-mixed-content.xml",
+			"conformance-names.xml",
+			"conformance-structure.xml"
+	};
+
+	private static final String[] READERS = {"stream", "index", "model", "source"};
+
+	private Extractor extractor;
+
+	@Override
+	protected void setUp() throws Exception {
+		extractor = XsltExtractor.forProfile(SchlegelExtractor.EXTRACTION_PROFILE);
+	}
+
+	public void testFolderIdsOfEdgeCases() throws Exception {
+		for (String reader : READERS) {
+			assertEquals(reader, Arrays.asList("R1", "R2", "R3"), getFolderIds(reader, "reader-edge-cases.xml"));
+		}
+		assertEquals(Arrays.asList("R1", "R2", "R3"), getFolderIds("dom", "reader-edge-cases.xml"));
+	}
+
+	public void testFolderIds() throws Exception {
+		for (String fixture : FIXTURES) {
+			List<String> expected = getFolderIds("dom", fixture);
+			for (String reader : READERS) {
+				assertEquals(reader + ", " + fixture, expected, getFolderIds(reader, fixture));
+			}
+		}
+	}
+
+	public void testAllFolders() throws Exception {
+		for (String fixture : FIXTURES) {
+			Map<String, String> expected = extract("dom", fixture, null);
+			assertEquals(fixture, getFolderIds("dom", fixture), new ArrayList<String>(expected.keySet()));
+			for (String reader : READERS) {
+				assertEquals(reader + ", " + fixture, expected, extract(reader, fixture, null));
+			}
+		}
+	}
+
+	public void testSelectedFolders() throws Exception {
+		List<String> folderIds = Arrays.asList("R3", "R1", "", "S1", "missing");
+		Map<String, String> expected = extract("dom", "reader-edge-cases.xml", folderIds);
+		assertEquals(Arrays.asList("R1", "R3"), new ArrayList<String>(expected.keySet()));
+		assertTrue(expected.get("R1").contains("Mappe R1"));
+		assertFalse(expected.get("R1").contains("Zweite Mappe R1"));
+		for (String reader : READERS) {
+			// compared regardless of order, the index reader passes folders on in the order they were asked for
+			assertEquals(reader, expected, extract(reader, "reader-edge-cases.xml", folderIds));
+		}
+	}
+
+	private List<String> getFolderIds(String reader, String fixture) throws Exception {
+		FolderReader folderReader = open(reader, fixture);
+		try {
+			return folderReader.getFolderIds();
+		} finally {
+			folderReader.close();
+		}
+	}
+
+	private Map<String, String> extract(String reader, String fixture, Collection<String> folderIds)
+			throws Exception {
+		final Map<String, String> result = new LinkedHashMap<String, String>();
+		FolderReader folderReader = open(reader, fixture);
+		try {
+			folderReader.extract(folderIds, extractor, true, new FolderHandler() {
+				@Override
+				public void folder(String folderId, byte[] xml) throws Exception {
+					assertFalse("folder " + folderId + " passed on twice", result.containsKey(folderId));
+					result.put(folderId, new String(xml, "UTF-8"));
+				}
+			});
+		} finally {
+			folderReader.close();
+		}
+		return result;
+	}
+
+	private FolderReader open(String reader, String fixture) throws Exception {
+		File eadFile = new File(getClass().getResource(fixture).toURI());
+		if ("dom".equals(reader)) {
+			EADDocument ead = new EADDocument();
+			ead.readEadFile(eadFile, false);
+			return ead;
+		} else if ("stream".equals(reader)) {
+			return new EADStreamReader(eadFile);
+		} else if ("index".equals(reader)) {
+			return new ParallelExtractor(eadFile, new FolderIndexBuilder().build(eadFile), 2, 2);
+		} else if ("model".equals(reader)) {
+			return ArchiveModel.read(eadFile, false);
+		}
+		return new SourceFolderReader(eadFile);
+	}
+}
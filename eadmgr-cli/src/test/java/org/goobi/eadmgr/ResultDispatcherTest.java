@@ -0,0 +1,187 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import junit.framework.TestCase;
+import org.apache.activemq.command.ActiveMQMapMessage;
+import org.apache.activemq.command.ActiveMQTextMessage;
+
+import javax.jms.MapMessage;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Checks how {@link ResultDispatcher} matches result messages to registered requests, including results that arrive
+ * too early, too late or not at all.
+ */
+public class ResultDispatcherTest extends TestCase {
+
+	private ResultDispatcher dispatcher;
+
+	@Override
+	protected void setUp() throws Exception {
+		dispatcher = new ResultDispatcher();
+	}
+
+	public void testResultCompletesRequest() throws Exception {
+		ResultDispatcher.PendingResult a = dispatcher.register("A");
+		ResultDispatcher.PendingResult b = dispatcher.register("B");
+		assertEquals(2, dispatcher.getPendingCount());
+
+		dispatcher.onMessage(result("B", "success"));
+
+		assertTrue(b.isDone());
+		assertEquals("success", b.get().get("result"));
+		assertFalse(a.isDone());
+		assertEquals(1, dispatcher.getPendingCount());
+	}
+
+	public void testResultCompletesWaitingThread() throws Exception {
+		final ResultDispatcher.PendingResult a = dispatcher.register("A");
+		Thread sender = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+					dispatcher.onMessage(result("A", "success"));
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		sender.start();
+		assertEquals("success", a.get(10, TimeUnit.SECONDS).get("result"));
+		sender.join();
+	}
+
+	public void testResultBeforeRegistrationIsIgnored() throws Exception {
+		dispatcher.onMessage(result("A", "early"));
+		ResultDispatcher.PendingResult a = dispatcher.register("A");
+
+		assertFalse(a.isDone());
+		try {
+			a.get(10, TimeUnit.MILLISECONDS);
+			fail("Result received before registration has been delivered.");
+		} catch (TimeoutException e) {
+			// expected
+		}
+
+		dispatcher.onMessage(result("A", "success"));
+		assertEquals("success", a.get(0, TimeUnit.MILLISECONDS).get("result"));
+	}
+
+	public void testTimeoutKeepsRequestPending() throws Exception {
+		ResultDispatcher.PendingResult a = dispatcher.register("A");
+		try {
+			a.get(10, TimeUnit.MILLISECONDS);
+			fail("No timeout without result.");
+		} catch (TimeoutException e) {
+			// expected
+		}
+		assertFalse(a.isDone());
+		assertEquals(1, dispatcher.getPendingCount());
+
+		dispatcher.onMessage(result("A", "late"));
+		assertEquals("late", a.get().get("result"));
+		assertEquals(0, dispatcher.getPendingCount());
+	}
+
+	public void testLateResultAfterCancelIsIgnored() throws Exception {
+		ResultDispatcher.PendingResult a = dispatcher.register("A");
+		assertTrue(a.cancel(false));
+		assertTrue(a.isCancelled());
+		assertEquals(0, dispatcher.getPendingCount());
+
+		dispatcher.onMessage(result("A", "late"));
+		try {
+			a.get();
+			fail("Late result delivered to cancelled request.");
+		} catch (CancellationException e) {
+			// expected
+		}
+
+		// the ID can be used again, and the next result goes to the new request
+		ResultDispatcher.PendingResult again = dispatcher.register("A");
+		assertFalse(again.isDone());
+		dispatcher.onMessage(result("A", "success"));
+		assertEquals("success", again.get().get("result"));
+	}
+
+	public void testCancelAfterResultFails() throws Exception {
+		ResultDispatcher.PendingResult a = dispatcher.register("A");
+		dispatcher.onMessage(result("A", "success"));
+
+		assertFalse(a.cancel(false));
+		assertFalse(a.isCancelled());
+		assertEquals("success", a.get().get("result"));
+	}
+
+	public void testFailAll() throws Exception {
+		ResultDispatcher.PendingResult a = dispatcher.register("A");
+		ResultDispatcher.PendingResult b = dispatcher.register("B");
+		dispatcher.onMessage(result("B", "success"));
+		Exception cause = new Exception("Connection lost");
+
+		dispatcher.failAll(cause);
+		dispatcher.onMessage(result("A", "late"));
+
+		try {
+			a.get();
+			fail("Failed request has a result.");
+		} catch (ExecutionException e) {
+			assertSame(cause, e.getCause());
+		}
+		assertEquals("success", b.get().get("result"));
+		assertEquals(0, dispatcher.getPendingCount());
+	}
+
+	public void testDuplicateRegistrationIsRejected() throws Exception {
+		dispatcher.register("A");
+		try {
+			dispatcher.register("A");
+			fail("Second request with the same ID registered.");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	public void testOtherMessagesAreIgnored() throws Exception {
+		ResultDispatcher.PendingResult a = dispatcher.register("A");
+		ActiveMQTextMessage text = new ActiveMQTextMessage();
+		text.setText("A");
+		dispatcher.onMessage(text);
+		dispatcher.onMessage(new ActiveMQMapMessage());
+		dispatcher.onMessage(result("B", "success"));
+
+		assertFalse(a.isDone());
+		assertEquals(1, dispatcher.getPendingCount());
+	}
+
+	private static MapMessage result(String id, String result) throws Exception {
+		MapMessage message = new ActiveMQMapMessage();
+		message.setString(ResultDispatcher.ID_FIELD, id);
+		message.setString("result", result);
+		return message;
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import junit.framework.TestCase;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * Checks which problems {@link StreamingValidator} reports and when it stops validating a file.
+ */
+public class StreamingValidatorTest extends TestCase {
+
+	private static final String SCHEMA = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" "
+			+ "targetNamespace=\"urn:example\" elementFormDefault=\"qualified\">"
+			+ "<xs:element name=\"folders\"><xs:complexType><xs:sequence>"
+			+ "<xs:element name=\"folder\" type=\"xs:int\" maxOccurs=\"unbounded\"/>"
+			+ "</xs:sequence></xs:complexType></xs:element></xs:schema>";
+
+	private Schema schema;
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+				.newSchema(new StreamSource(new StringReader(SCHEMA)));
+		file = File.createTempFile("eadmgr-validator-test", ".xml");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testValidFile() throws Exception {
+		write("<folder>1</folder>", "<folder>2</folder>");
+		assertTrue(new StreamingValidator(schema, 10).validate(file).isEmpty());
+	}
+
+	public void testErrorsInDocumentOrder() throws Exception {
+		write("<folder>a</folder>", "<folder>2</folder>", "<folder>b</folder>", "<folder>c</folder>");
+		List<SAXParseException> errors = new StreamingValidator(schema, 10).validate(file);
+
+		// every invalid value is reported as two errors, for the type and for the element
+		assertEquals(6, errors.size());
+		assertEquals(3, errors.get(0).getLineNumber());
+		assertEquals(5, errors.get(2).getLineNumber());
+		assertEquals(6, errors.get(5).getLineNumber());
+	}
+
+	public void testValidationStopsAtMaxErrors() throws Exception {
+		write("<folder>a</folder>", "<folder>b</folder>", "<folder>c</folder>");
+		List<SAXParseException> errors = new StreamingValidator(schema, 3).validate(file);
+
+		assertEquals(3, errors.size());
+		assertEquals(4, errors.get(2).getLineNumber());
+	}
+
+	public void testMalformedFile() throws Exception {
+		write("<folder>a</folder>", "<folder>1</folders>");
+		List<SAXParseException> errors = new StreamingValidator(schema, 10).validate(file);
+
+		assertEquals(3, errors.size());
+		assertEquals(4, errors.get(2).getLineNumber());
+	}
+
+	public void testValidatorCanBeReused() throws Exception {
+		StreamingValidator validator = new StreamingValidator(schema, 1);
+		write("<folder>a</folder>");
+		assertEquals(1, validator.validate(file).size());
+		write("<folder>1</folder>");
+		assertTrue(validator.validate(file).isEmpty());
+	}
+
+	public void testWarningsAreNoErrors() throws Exception {
+		StreamingValidator.CollectingErrorHandler handler = new StreamingValidator.CollectingErrorHandler(2);
+		handler.warning(new SAXParseException("Warning", null));
+		handler.warning(new SAXParseException("Warning", null));
+		assertTrue(handler.getErrors().isEmpty());
+
+		handler.error(new SAXParseException("Error", null));
+		handler.warning(new SAXParseException("Warning", null));
+		try {
+			handler.error(new SAXParseException("Error", null));
+			fail("Validation not stopped after 2 errors.");
+		} catch (SAXException e) {
+			// expected
+		}
+		assertEquals(2, handler.getErrors().size());
+	}
+
+	private void write(String... folders) throws Exception {
+		StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<folders xmlns=\"urn:example\">\n");
+		for (String folder : folders) {
+			xml.append(folder).append('\n');
+		}
+		xml.append("</folders>\n");
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(xml.toString().getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Checks the content hashes of {@link SyncStore} and how the store is written to and read from its sidecar file.
+ */
+public class SyncStoreTest extends TestCase {
+
+	private static final String PROFILE = SchlegelExtractor.EXTRACTION_PROFILE;
+
+	private File dir;
+	private File eadFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("eadmgr-sync-test", "");
+		dir.delete();
+		dir.mkdir();
+		eadFile = new File(dir, "ead.xml");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	public void testIndentationDoesNotChangeHash() throws Exception {
+		EADDocument ead = new EADDocument();
+		ead.readEadFile(new File(getClass().getResource("conformance-mixed-content.xml").toURI()), false);
+		Extractor extractor = XsltExtractor.forProfile(PROFILE);
+		for (String folderId : ead.getFolderIds()) {
+			byte[] indented = ead.extractFolderData(folderId, extractor, true);
+			byte[] compact = ead.extractFolderData(folderId, extractor, false);
+			assertFalse(folderId, Arrays.equals(indented, compact));
+			assertEquals(folderId, SyncStore.hash(indented), SyncStore.hash(compact));
+		}
+	}
+
+	public void testContentChangesHash() throws Exception {
+		String hash = hash("<folder><id>F1</id><title type=\"main\">Mappe 1</title></folder>");
+
+		assertEquals(hash, hash("<folder>\n  <id>F1</id>\n  <title type='main'>Mappe 1</title>\n</folder>\n"));
+		assertFalse(hash.equals(hash("<folder><id>F1</id><title type=\"main\">Mappe 2</title></folder>")));
+		assertFalse(hash.equals(hash("<folder><id>F1</id><title type=\"main\">Mappe  1</title></folder>")));
+		assertFalse(hash.equals(hash("<folder><id>F1</id><title type=\"other\">Mappe 1</title></folder>")));
+		assertFalse(hash.equals(hash("<folder><id>F1</id><title>Mappe 1</title></folder>")));
+		assertFalse(hash.equals(hash("<folder><id>F1</id><name type=\"main\">Mappe 1</name></folder>")));
+		assertFalse(hash.equals(hash("<folder><title type=\"main\">Mappe 1</title><id>F1</id></folder>")));
+		assertFalse(hash.equals(hash("<folder><id>F1</id><title type=\"main\">Mappe 1<x/></title></folder>")));
+		assertFalse(hash.equals(hash("<folder xmlns=\"urn:example\"><id>F1</id><title type=\"main\">Mappe 1</title>"
+				+ "</folder>")));
+	}
+
+	public void testMissingStoreIsEmpty() throws Exception {
+		SyncStore store = SyncStore.forFile(eadFile);
+		assertNull(store.get("F1", PROFILE));
+		assertFalse(SyncStore.getStoreFile(eadFile).exists());
+	}
+
+	public void testWriteAndRead() throws Exception {
+		SyncStore store = SyncStore.forFile(eadFile);
+		store.put("F1", PROFILE, "1111");
+		store.put("F1", "other.xsl", "2222");
+		store.put("F2", PROFILE, "3333");
+		store.write();
+
+		store = SyncStore.forFile(eadFile);
+		assertEquals("1111", store.get("F1", PROFILE));
+		assertEquals("2222", store.get("F1", "other.xsl"));
+		assertEquals("3333", store.get("F2", PROFILE));
+		assertNull(store.get("F2", "other.xsl"));
+
+		// writing again replaces the previous store and leaves no temporary file behind
+		store.put("F2", PROFILE, "4444");
+		store.write();
+		assertEquals("4444", SyncStore.forFile(eadFile).get("F2", PROFILE));
+		assertEquals(Arrays.asList(SyncStore.getStoreFile(eadFile)), Arrays.asList(dir.listFiles()));
+	}
+
+	public void testFailedWriteKeepsPreviousStore() throws Exception {
+		SyncStore store = SyncStore.forFile(eadFile);
+		store.put("F1", PROFILE, "1111");
+		store.write();
+
+		// a directory in place of the temporary file makes the next write fail
+		File tmp = new File(dir, SyncStore.getStoreFile(eadFile).getName() + ".tmp");
+		assertTrue(tmp.mkdir());
+		store.put("F1", PROFILE, "2222");
+		try {
+			store.write();
+			fail("Write into a directory succeeded.");
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals("1111", SyncStore.forFile(eadFile).get("F1", PROFILE));
+	}
+
+	public void testUnknownFormatIsRejected() throws Exception {
+		OutputStream out = new FileOutputStream(SyncStore.getStoreFile(eadFile));
+		try {
+			out.write("# eadmgr sync store 2\nF1\tschlegel.xsl\t1111\n".getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+
+		try {
+			SyncStore.forFile(eadFile);
+			fail("Store of unknown format has been read.");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private static String hash(String xml) throws Exception {
+		return SyncStore.hash(xml.getBytes("UTF-8"));
+	}
+}
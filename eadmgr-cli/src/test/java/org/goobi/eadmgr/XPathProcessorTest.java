@@ -0,0 +1,102 @@
+/*
+ * This file is part of the Goobi Application - a Workflow tool for the support of
+ * mass digitization.
+ *
+ * Visit the websites for more information.
+ *     - http://gdz.sub.uni-goettingen.de
+ *     - http://www.goobi.org
+ *     - http://launchpad.net/goobi-production
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.goobi.eadmgr;
+
+import junit.framework.TestCase;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+
+/**
+ * Checks that {@link XPathProcessor} resolves variables and namespace prefixes of the processor evaluating an
+ * expression, although compiled expressions are shared.
+ */
+public class XPathProcessorTest extends TestCase {
+
+	private Document document;
+
+	@Override
+	protected void setUp() throws Exception {
+		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		dbf.setNamespaceAware(true);
+		document = dbf.newDocumentBuilder().parse(new InputSource(new StringReader(
+				"<ead xmlns=\"urn:isbn:1-931666-22-9\" xmlns:x=\"urn:example\">"
+						+ "<c id=\"C1\"/><c id=\"C2\"/><x:c id=\"X1\"/></ead>")));
+	}
+
+	public void testNamespaces() throws Exception {
+		XPathProcessor ead = new XPathProcessor();
+		ead.declareNamespace("p", "urn:isbn:1-931666-22-9");
+		XPathProcessor other = new XPathProcessor();
+		other.declareNamespace("p", "urn:example");
+
+		// the same expression is compiled once per set of declared namespaces
+		assertEquals(2, ead.queryList("/p:ead/p:c", document).getLength());
+		assertEquals(1, other.queryList("/*/p:c", document).getLength());
+		assertEquals(0, other.queryList("/p:ead/p:c", document).getLength());
+		assertEquals(2, ead.queryList("/p:ead/p:c", document).getLength());
+	}
+
+	public void testVariables() throws Exception {
+		XPathProcessor first = new XPathProcessor();
+		first.declareNamespace("ead", "urn:isbn:1-931666-22-9");
+		first.setQueryNode(document);
+		first.setVariable("id", "C1");
+		XPathProcessor second = new XPathProcessor();
+		second.declareNamespace("ead", "urn:isbn:1-931666-22-9");
+		second.setQueryNode(document);
+		second.setVariable("id", "C2");
+
+		assertEquals("C1", id(first.query("//ead:c[@id = $id]")));
+		assertEquals("C2", id(second.query("//ead:c[@id = $id]")));
+		first.setVariable("id", "C2");
+		assertEquals("C2", id(first.query("//ead:c[@id = $id]")));
+	}
+
+	public void testRemovedVariableFailsEvaluation() throws Exception {
+		XPathProcessor xp = new XPathProcessor();
+		xp.setVariable("id", "C1");
+		xp.setVariable("id", null);
+		try {
+			xp.query("//*[@id = $id]", document);
+			fail("Undefined variable resolved.");
+		} catch (Exception e) {
+			// expected
+		}
+	}
+
+	public void testUnknownPrefixFailsEvaluation() throws Exception {
+		try {
+			new XPathProcessor().query("//unknown:c", document);
+			fail("Undeclared prefix resolved.");
+		} catch (Exception e) {
+			// expected
+		}
+	}
+
+	private static String id(Node node) {
+		return (node == null) ? null : node.getAttributes().getNamedItem("id").getNodeValue();
+	}
+}